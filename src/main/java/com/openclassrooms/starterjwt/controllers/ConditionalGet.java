@@ -0,0 +1,51 @@
+package com.openclassrooms.starterjwt.controllers;
+
+import com.openclassrooms.starterjwt.repository.Freshness;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Weak ETag and Last-Modified validators derived from updatedAt, checked before any DTO is built so
+ * that answering a poll for unchanged data costs a single small query. updated_at is stored with
+ * microseconds and the ETag keeps all of them; Last-Modified is limited to whole seconds by HTTP, so
+ * only clients sending If-Modified-Since without If-None-Match can miss a change within the second.
+ */
+final class ConditionalGet {
+    private ConditionalGet() {
+    }
+
+    /**
+     * Adds the validators to the response.
+     *
+     * @return true when the client's copy is current and a 304 should be sent instead of the body
+     */
+    static boolean isNotModified(WebRequest request, String key, LocalDateTime updatedAt) {
+        if (updatedAt == null) {
+            return false;
+        }
+
+        Instant instant = updatedAt.atZone(ZoneId.systemDefault()).toInstant();
+        long micros = instant.getEpochSecond() * 1_000_000 + instant.getNano() / 1_000;
+        return request.checkNotModified("W/\"" + key + "-" + Long.toHexString(micros) + "\"", instant.toEpochMilli());
+    }
+
+    static boolean isNotModified(WebRequest request, String key, Freshness freshness) {
+        return freshness != null && isNotModified(request, key + "-" + freshness.getCount(), freshness.getLastUpdated());
+    }
+
+    // Without validators from the client a 304 is impossible, so looking updatedAt up first would be wasted
+    static boolean isConditional(WebRequest request) {
+        return request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                || request.getHeader(HttpHeaders.IF_MODIFIED_SINCE) != null;
+    }
+
+    static ResponseEntity<?> notModified() {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+    }
+}
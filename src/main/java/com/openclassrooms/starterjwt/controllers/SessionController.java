@@ -1,15 +1,47 @@
 package com.openclassrooms.starterjwt.controllers;
 
 
+import com.openclassrooms.starterjwt.dto.ParticipationResultDto;
+import com.openclassrooms.starterjwt.dto.SessionChangesDto;
 import com.openclassrooms.starterjwt.dto.SessionDto;
+import com.openclassrooms.starterjwt.dto.SessionPageDto;
+import com.openclassrooms.starterjwt.dto.SessionSearchDto;
+import com.openclassrooms.starterjwt.dto.SessionView;
 import com.openclassrooms.starterjwt.mapper.SessionMapper;
 import com.openclassrooms.starterjwt.models.Session;
+import com.openclassrooms.starterjwt.payload.request.BulkParticipationRequest;
+import com.openclassrooms.starterjwt.security.services.UserDetailsImpl;
+import com.openclassrooms.starterjwt.services.SessionCursor;
+import com.openclassrooms.starterjwt.services.SessionEventBroadcaster;
+import com.openclassrooms.starterjwt.services.SessionExportService;
 import com.openclassrooms.starterjwt.services.SessionService;
+import com.openclassrooms.starterjwt.services.SessionViewCache;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 @CrossOrigin(origins = "*", maxAge = 3600)
@@ -19,34 +51,213 @@ import java.util.List;
 public class SessionController {
     private final SessionMapper sessionMapper;
     private final SessionService sessionService;
+    private final SessionExportService sessionExportService;
+    private final SessionEventBroadcaster sessionEventBroadcaster;
+    private final SessionViewCache sessionViewCache;
 
+    // Plain GET /api/session without paging parameters still returns the whole list as an array
+    @Value("${oc.app.session.legacyListEnabled:true}")
+    private boolean legacyListEnabled = true;
+
+    @Value("${oc.app.session.defaultPageSize:20}")
+    private int defaultPageSize = 20;
+
+    @Value("${oc.app.session.maxPageSize:100}")
+    private int maxPageSize = 100;
+
+    @Value("${oc.app.session.maxBulkSize:500}")
+    private int maxBulkSize = 500;
+
+    // The returned watermark lags behind by this much, so that rows committed late with an earlier
+    // updated_at are sent again rather than missed
+    @Value("${oc.app.session.changesGraceMs:5000}")
+    private long changesGraceMs = 5000;
 
     public SessionController(SessionService sessionService,
-                             SessionMapper sessionMapper) {
+                             SessionMapper sessionMapper,
+                             SessionExportService sessionExportService,
+                             SessionEventBroadcaster sessionEventBroadcaster,
+                             SessionViewCache sessionViewCache) {
         this.sessionMapper = sessionMapper;
         this.sessionService = sessionService;
+        this.sessionExportService = sessionExportService;
+        this.sessionEventBroadcaster = sessionEventBroadcaster;
+        this.sessionViewCache = sessionViewCache;
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<?> findById(@PathVariable("id") String id) {
+    public ResponseEntity<?> findById(@PathVariable("id") String id, WebRequest request) {
         try {
-            Session session = this.sessionService.getById(Long.valueOf(id));
+            Long sessionId = Long.valueOf(id);
+            // A cached view answers without touching the database, its updatedAt included
+            SessionView view = this.sessionViewCache.getIfPresent(sessionId);
 
-            if (session == null) {
+            if (view == null) {
+                // On a miss, the client's copy is checked against updated_at alone before anything is mapped
+                if (ConditionalGet.isConditional(request)
+                        && ConditionalGet.isNotModified(request, id, this.sessionService.getUpdatedAt(sessionId))) {
+                    return ConditionalGet.notModified();
+                }
+                view = this.sessionViewCache.load(sessionId, this::loadView);
+            }
+
+            if (view == null) {
                 return ResponseEntity.notFound().build();
             }
 
-            return ResponseEntity.ok().body(this.sessionMapper.toDto(session));
+            if (ConditionalGet.isNotModified(request, id, view.getUpdatedAt())) {
+                return ConditionalGet.notModified();
+            }
+
+            return ResponseEntity.ok().body(view);
         } catch (NumberFormatException e) {
             return ResponseEntity.badRequest().build();
         }
     }
 
     @GetMapping()
-    public ResponseEntity<?> findAll() {
-        List<Session> sessions = this.sessionService.findAll();
+    public ResponseEntity<?> findAll(@RequestParam(value = "cursor", required = false) String cursor,
+                                     @RequestParam(value = "size", required = false) String size,
+                                     WebRequest request) {
+        if (ConditionalGet.isNotModified(request, "sessions", this.sessionService.getFreshness())) {
+            return ConditionalGet.notModified();
+        }
+
+        if (this.legacyListEnabled && cursor == null && size == null) {
+            List<Session> sessions = this.sessionService.findAll();
+
+            return ResponseEntity.ok().body(this.sessionMapper.toDto(sessions, this.sessionService.findParticipantIds(sessions)));
+        }
 
-        return ResponseEntity.ok().body(this.sessionMapper.toDto(sessions));
+        try {
+            int pageSize = size != null ? Integer.parseInt(size) : this.defaultPageSize;
+            if (pageSize < 1) {
+                return ResponseEntity.badRequest().build();
+            }
+
+            SessionCursor after = cursor != null ? SessionCursor.decode(cursor) : null;
+            return ResponseEntity.ok().body(toPageDto(this.sessionService.findPage(after, Math.min(pageSize, this.maxPageSize))));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Sessions the authenticated user takes part in, paged like findAll
+    @GetMapping("/mine")
+    public ResponseEntity<?> findMine(@RequestParam(value = "cursor", required = false) String cursor,
+                                      @RequestParam(value = "size", required = false) String size,
+                                      WebRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof UserDetailsImpl)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        Long userId = ((UserDetailsImpl) authentication.getPrincipal()).getId();
+
+        // Same URL for every user: the user id is part of the tag
+        if (ConditionalGet.isNotModified(request, "sessions-" + userId, this.sessionService.getFreshness())) {
+            return ConditionalGet.notModified();
+        }
+
+        try {
+            int pageSize = size != null ? Integer.parseInt(size) : this.defaultPageSize;
+            if (pageSize < 1) {
+                return ResponseEntity.badRequest().build();
+            }
+
+            SessionCursor after = cursor != null ? SessionCursor.decode(cursor) : null;
+            return ResponseEntity.ok().body(toPageDto(
+                    this.sessionService.findParticipantPage(userId, after, Math.min(pageSize, this.maxPageSize))));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Sessions filtered by date range (from inclusive, to exclusive, as yyyy-MM-dd or ISO date-time),
+     * teacher id and name prefix, sorted by date or name ("-" prefix for descending) then id.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> search(@RequestParam(value = "from", required = false) String from,
+                                    @RequestParam(value = "to", required = false) String to,
+                                    @RequestParam(value = "teacherId", required = false) String teacherId,
+                                    @RequestParam(value = "name", required = false) String name,
+                                    @RequestParam(value = "sort", defaultValue = "date") String sort,
+                                    @RequestParam(value = "page", defaultValue = "0") String page,
+                                    @RequestParam(value = "size", required = false) String size,
+                                    WebRequest request) {
+        if (ConditionalGet.isNotModified(request, "sessions", this.sessionService.getFreshness())) {
+            return ConditionalGet.notModified();
+        }
+
+        try {
+            int pageNumber = Integer.parseInt(page);
+            int pageSize = size != null ? Integer.parseInt(size) : this.defaultPageSize;
+            boolean descending = sort.startsWith("-");
+            String property = descending ? sort.substring(1) : sort;
+            if (pageNumber < 0 || pageSize < 1 || !(property.equals("date") || property.equals("name"))) {
+                return ResponseEntity.badRequest().build();
+            }
+
+            Sort order = Sort.by(descending ? Sort.Direction.DESC : Sort.Direction.ASC, property).and(Sort.by("id"));
+            Page<Session> result = this.sessionService.search(
+                    parseDate(from),
+                    parseDate(to),
+                    teacherId != null ? Long.valueOf(teacherId) : null,
+                    name,
+                    PageRequest.of(pageNumber, Math.min(pageSize, this.maxPageSize), order));
+
+            List<Session> sessions = result.getContent();
+            return ResponseEntity.ok().body(new SessionSearchDto(
+                    this.sessionMapper.toDto(sessions, this.sessionService.findParticipantIds(sessions)),
+                    result.getNumber(), result.getSize(), result.getTotalElements()));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Sessions created, updated or deleted since the watermark returned by the previous call, or every
+     * session when "since" is absent. A session may be sent again in a later response; 410 means the
+     * watermark is too old and the client must start over without one.
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<?> findChanges(@RequestParam(value = "since", required = false) String since) {
+        long now = System.currentTimeMillis();
+        try {
+            List<Session> sessions;
+            List<Long> deleted;
+            if (since == null) {
+                sessions = this.sessionService.findAll();
+                deleted = new ArrayList<>();
+            } else {
+                LocalDateTime sinceTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(since)), ZoneId.systemDefault());
+                if (!this.sessionService.canReportChangesSince(sinceTime)) {
+                    return ResponseEntity.status(HttpStatus.GONE).build();
+                }
+                sessions = this.sessionService.findUpdatedSince(sinceTime);
+                deleted = this.sessionService.findDeletedSince(sinceTime);
+            }
+
+            return ResponseEntity.ok().body(new SessionChangesDto(
+                    this.sessionMapper.toDto(sessions, this.sessionService.findParticipantIds(sessions)),
+                    deleted,
+                    Long.toString(now - this.changesGraceMs)));
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Server-Sent Events stream of committed session changes, replacing polling
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events() {
+        return this.sessionEventBroadcaster.subscribe();
+    }
+
+    // Every session, streamed as a JSON array for clients that need the full table
+    @GetMapping("/export")
+    public void export(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        this.sessionExportService.export(response.getOutputStream());
     }
 
     @PostMapping()
@@ -107,4 +318,57 @@ public class SessionController {
             return ResponseEntity.badRequest().build();
         }
     }
+
+    // Enrolls or removes many users in one session, or one user across many sessions, with a status per pair
+    @PostMapping("/participate")
+    public ResponseEntity<?> participateAll(@Valid @RequestBody BulkParticipationRequest request) {
+        List<ParticipationResultDto> items = new ArrayList<>();
+        if (request.getSessionId() != null && request.getUserIds() != null
+                && request.getUserId() == null && request.getSessionIds() == null) {
+            for (Long userId : request.getUserIds()) {
+                items.add(new ParticipationResultDto(request.getSessionId(), userId, null));
+            }
+        } else if (request.getUserId() != null && request.getSessionIds() != null
+                && request.getSessionId() == null && request.getUserIds() == null) {
+            for (Long sessionId : request.getSessionIds()) {
+                items.add(new ParticipationResultDto(sessionId, request.getUserId(), null));
+            }
+        } else {
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (items.size() > this.maxBulkSize
+                || items.stream().anyMatch(item -> item.getSessionId() == null || item.getUserId() == null)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        if (request.getAction() == BulkParticipationRequest.Action.ADD) {
+            return ResponseEntity.ok().body(this.sessionService.participateAll(items));
+        }
+        return ResponseEntity.ok().body(this.sessionService.noLongerParticipateAll(items));
+    }
+
+    private SessionView loadView(Long id) {
+        Session session = this.sessionService.getById(id);
+        if (session == null) {
+            return null;
+        }
+        return SessionView.of(this.sessionMapper.toDto(session, this.sessionService.findParticipantIds(session)));
+    }
+
+    private SessionPageDto toPageDto(Slice<Session> page) {
+        List<Session> sessions = page.getContent();
+        String nextCursor = page.hasNext() ? SessionCursor.after(sessions.get(sessions.size() - 1)).encode() : null;
+        return new SessionPageDto(this.sessionMapper.toDto(sessions, this.sessionService.findParticipantIds(sessions)), nextCursor);
+    }
+
+    private static Date parseDate(String value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.length() == 10) {
+            return Date.from(LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        }
+        return Date.from(OffsetDateTime.parse(value).toInstant());
+    }
 }
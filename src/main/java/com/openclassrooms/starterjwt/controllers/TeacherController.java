@@ -2,9 +2,15 @@ package com.openclassrooms.starterjwt.controllers;
 
 import com.openclassrooms.starterjwt.mapper.TeacherMapper;
 import com.openclassrooms.starterjwt.models.Teacher;
+import com.openclassrooms.starterjwt.security.services.UserDetailsImpl;
 import com.openclassrooms.starterjwt.services.TeacherService;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+
 import java.util.List;
 
 @CrossOrigin(origins = "*", maxAge = 3600)
@@ -22,8 +28,12 @@ public class TeacherController {
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<?> findById(@PathVariable("id") String id) {
+    public ResponseEntity<?> findById(@PathVariable("id") String id, WebRequest request) {
         try {
+            if (ConditionalGet.isNotModified(request, id, this.teacherService.getUpdatedAt(Long.valueOf(id)))) {
+                return ConditionalGet.notModified();
+            }
+
             Teacher teacher = this.teacherService.findById(Long.valueOf(id));
 
             if (teacher == null) {
@@ -37,9 +47,28 @@ public class TeacherController {
     }
 
     @GetMapping()
-    public ResponseEntity<?> findAll() {
+    public ResponseEntity<?> findAll(WebRequest request) {
+        if (ConditionalGet.isNotModified(request, "teachers", this.teacherService.getFreshness())) {
+            return ConditionalGet.notModified();
+        }
+
         List<Teacher> teachers = this.teacherService.findAll();
 
         return ResponseEntity.ok().body(this.teacherMapper.toDto(teachers));
     }
+
+    // Reloads the teacher catalog right away, after rows were edited directly in the database. Admins only:
+    // every call reads the whole table
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof UserDetailsImpl)
+                || !Boolean.TRUE.equals(((UserDetailsImpl) authentication.getPrincipal()).getAdmin())) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        this.teacherService.reload();
+
+        return ResponseEntity.ok().build();
+    }
 }
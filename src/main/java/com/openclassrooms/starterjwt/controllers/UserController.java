@@ -8,6 +8,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.Objects;
 
@@ -26,8 +27,12 @@ public class UserController {
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<?> findById(@PathVariable("id") String id) {
+    public ResponseEntity<?> findById(@PathVariable("id") String id, WebRequest request) {
         try {
+            if (ConditionalGet.isNotModified(request, id, this.userService.getUpdatedAt(Long.valueOf(id)))) {
+                return ConditionalGet.notModified();
+            }
+
             User user = this.userService.findById(Long.valueOf(id));
 
             if (user == null) {
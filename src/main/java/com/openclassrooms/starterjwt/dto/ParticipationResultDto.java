@@ -0,0 +1,25 @@
+package com.openclassrooms.starterjwt.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ParticipationResultDto {
+    public enum Status {
+        ADDED,
+        REMOVED,
+        ALREADY_PARTICIPATING,
+        NOT_PARTICIPATING,
+        SESSION_FULL,
+        NOT_FOUND
+    }
+
+    private Long sessionId;
+
+    private Long userId;
+
+    private Status status;
+}
@@ -0,0 +1,21 @@
+package com.openclassrooms.starterjwt.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionChangesDto {
+    // Sessions created or updated since the watermark
+    private List<SessionDto> updated;
+
+    // Ids of the sessions deleted since the watermark
+    private List<Long> deleted;
+
+    // To send as "since" on the next call
+    private String watermark;
+}
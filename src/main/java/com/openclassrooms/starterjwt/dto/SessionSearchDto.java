@@ -0,0 +1,21 @@
+package com.openclassrooms.starterjwt.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SessionSearchDto {
+    private List<SessionDto> items;
+
+    // Zero-based
+    private int page;
+
+    private int size;
+
+    private long totalElements;
+}
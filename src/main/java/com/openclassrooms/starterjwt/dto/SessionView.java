@@ -0,0 +1,78 @@
+package com.openclassrooms.starterjwt.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Frozen copy of a SessionDto, serialized to the same JSON. Instances are shared between request
+ * threads through SessionViewCache, so nothing reachable from them can be modified.
+ */
+public final class SessionView {
+    private final Long id;
+    private final String name;
+    private final Long date;
+    private final Long teacherId;
+    private final String description;
+    private final Integer capacity;
+    private final List<Long> users;
+    private final LocalDateTime createdAt;
+    private final LocalDateTime updatedAt;
+
+    private SessionView(SessionDto dto) {
+        this.id = dto.getId();
+        this.name = dto.getName();
+        this.date = dto.getDate() != null ? dto.getDate().getTime() : null;
+        this.teacherId = dto.getTeacher_id();
+        this.description = dto.getDescription();
+        this.capacity = dto.getCapacity();
+        this.users = dto.getUsers() != null ? Collections.unmodifiableList(List.copyOf(dto.getUsers())) : null;
+        this.createdAt = dto.getCreatedAt();
+        this.updatedAt = dto.getUpdatedAt();
+    }
+
+    public static SessionView of(SessionDto dto) {
+        return new SessionView(dto);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Date is mutable, a new copy is handed out each time
+    public Date getDate() {
+        return date != null ? new Date(date) : null;
+    }
+
+    @JsonProperty("teacher_id")
+    public Long getTeacherId() {
+        return teacherId;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public Integer getCapacity() {
+        return capacity;
+    }
+
+    public List<Long> getUsers() {
+        return users;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+}
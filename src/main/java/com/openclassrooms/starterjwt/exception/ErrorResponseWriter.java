@@ -0,0 +1,140 @@
+package com.openclassrooms.starterjwt.exception;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes {"status":..,"error":..,"message":..,"path":..} error bodies without Jackson: the fixed parts
+ * are encoded once per status, and the message and path are JSON-escaped straight into a per-thread
+ * byte buffer, so that answering a flood of rejected requests allocates next to nothing.
+ */
+@Component
+public class ErrorResponseWriter {
+    private static final int BUFFER_SIZE = 2048;
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] PATH_FIELD = "\",\"path\":\"".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] END = "\"}".getBytes(StandardCharsets.US_ASCII);
+
+    // {"status":401,"error":"Unauthorized","message":"
+    private static final Map<HttpStatus, byte[]> PREFIXES = new EnumMap<>(HttpStatus.class);
+
+    static {
+        for (HttpStatus status : HttpStatus.values()) {
+            String prefix = "{\"status\":" + status.value() + ",\"error\":\"" + status.getReasonPhrase() + "\",\"message\":\"";
+            PREFIXES.put(status, prefix.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static final ThreadLocal<Buffer> BUFFERS = ThreadLocal.withInitial(Buffer::new);
+
+    public void write(HttpServletResponse response, HttpStatus status, String message, String path) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+
+        Buffer buffer = BUFFERS.get();
+        buffer.reset(response);
+        try {
+            buffer.append(PREFIXES.get(status));
+            buffer.appendEscaped(message);
+            buffer.append(PATH_FIELD);
+            buffer.appendEscaped(path);
+            buffer.append(END);
+
+            if (buffer.out == null) {
+                response.setContentLength(buffer.position);
+            }
+            buffer.flush();
+        } finally {
+            buffer.reset(null);
+        }
+    }
+
+    private static final class Buffer {
+        private final byte[] bytes = new byte[BUFFER_SIZE];
+
+        private int position;
+
+        private HttpServletResponse response;
+
+        // Only opened when the body outgrows the buffer, otherwise the body is written in one go with its length
+        private OutputStream out;
+
+        void reset(HttpServletResponse response) {
+            this.response = response;
+            this.position = 0;
+            this.out = null;
+        }
+
+        void append(byte[] source) throws IOException {
+            for (byte b : source) {
+                put(b);
+            }
+        }
+
+        void appendEscaped(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    put((byte) '\\');
+                    put((byte) c);
+                } else if (c < 0x20) {
+                    put((byte) '\\');
+                    put((byte) 'u');
+                    put((byte) '0');
+                    put((byte) '0');
+                    put(HEX[c >> 4]);
+                    put(HEX[c & 0xF]);
+                } else if (c < 0x80) {
+                    put((byte) c);
+                } else if (c < 0x800) {
+                    put((byte) (0xC0 | (c >> 6)));
+                    put((byte) (0x80 | (c & 0x3F)));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    put((byte) (0xF0 | (codePoint >> 18)));
+                    put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                    put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    put((byte) (0x80 | (codePoint & 0x3F)));
+                } else if (Character.isSurrogate(c)) {
+                    put((byte) '?');
+                } else {
+                    put((byte) (0xE0 | (c >> 12)));
+                    put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+        }
+
+        void flush() throws IOException {
+            if (out == null) {
+                out = response.getOutputStream();
+            }
+            out.write(bytes, 0, position);
+            position = 0;
+        }
+
+        private void put(byte b) throws IOException {
+            if (position == bytes.length) {
+                flush();
+            }
+            bytes[position++] = b;
+        }
+    }
+}
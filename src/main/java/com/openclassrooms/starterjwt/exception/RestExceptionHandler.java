@@ -0,0 +1,41 @@
+package com.openclassrooms.starterjwt.exception;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * Answers the application's own exceptions directly instead of forwarding to the /error page,
+ * with the same body as the 401 responses of AuthEntryPointJwt.
+ */
+@RestControllerAdvice
+public class RestExceptionHandler {
+    private final ErrorResponseWriter errorResponseWriter;
+
+    public RestExceptionHandler(ErrorResponseWriter errorResponseWriter) {
+        this.errorResponseWriter = errorResponseWriter;
+    }
+
+    @ExceptionHandler(NotFoundException.class)
+    public void handleNotFound(NotFoundException e, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        errorResponseWriter.write(response, HttpStatus.NOT_FOUND, e.getMessage(), request.getServletPath());
+    }
+
+    @ExceptionHandler(BadRequestException.class)
+    public void handleBadRequest(BadRequestException e, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        errorResponseWriter.write(response, HttpStatus.BAD_REQUEST, e.getMessage(), request.getServletPath());
+    }
+
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public void handleServiceUnavailable(ServiceUnavailableException e, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        errorResponseWriter.write(response, HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), request.getServletPath());
+    }
+}
@@ -1,19 +1,29 @@
 package com.openclassrooms.starterjwt.mapper;
 
 import com.openclassrooms.starterjwt.dto.SessionDto;
+import com.openclassrooms.starterjwt.exception.BadRequestException;
 import com.openclassrooms.starterjwt.models.Session;
+import com.openclassrooms.starterjwt.models.Teacher;
 import com.openclassrooms.starterjwt.models.User;
 import com.openclassrooms.starterjwt.services.TeacherService;
 import com.openclassrooms.starterjwt.services.UserService;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.Mappings;
+import org.mapstruct.Named;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Component
@@ -25,12 +35,86 @@ public abstract class SessionMapper implements EntityMapper<SessionDto, Session>
     @Autowired
     UserService userService;
 
+    @Named("withoutUsers")
     @Mappings({
             @Mapping(source = "description", target = "description"),
-            @Mapping(target = "teacher", expression = "java(sessionDto.getTeacher_id() != null ? this.teacherService.findById(sessionDto.getTeacher_id()) : null)"),
-            @Mapping(target = "users", expression = "java(Optional.ofNullable(sessionDto.getUsers()).orElseGet(Collections::emptyList).stream().map(user_id -> { User user = this.userService.findById(user_id); if (user != null) { return user; } return null; }).collect(Collectors.toList()))"),
+            @Mapping(target = "teacher", expression = "java(resolveTeacher(sessionDto.getTeacher_id()))"),
+            @Mapping(target = "users", ignore = true),
     })
-    public abstract Session toEntity(SessionDto sessionDto);
+    public abstract Session toEntityWithoutUsers(SessionDto sessionDto);
+
+    @Override
+    public Session toEntity(SessionDto sessionDto) {
+        if (sessionDto == null) {
+            return null;
+        }
+        return toEntity(Collections.singletonList(sessionDto)).get(0);
+    }
+
+    /**
+     * Resolves the participants of all the sessions with a single query.
+     *
+     * @throws BadRequestException when a participant id does not match any user
+     */
+    @Override
+    public List<Session> toEntity(List<SessionDto> sessionDtos) {
+        if (sessionDtos == null) {
+            return null;
+        }
+
+        Set<Long> userIds = new LinkedHashSet<>();
+        for (SessionDto sessionDto : sessionDtos) {
+            if (sessionDto != null && sessionDto.getUsers() != null) {
+                userIds.addAll(sessionDto.getUsers());
+            }
+        }
+        Map<Long, User> usersById = resolveUsers(userIds);
+
+        List<Session> sessions = new ArrayList<>(sessionDtos.size());
+        for (SessionDto sessionDto : sessionDtos) {
+            Session session = toEntityWithoutUsers(sessionDto);
+            if (session != null) {
+                session.setUsers(Optional.ofNullable(sessionDto.getUsers()).orElseGet(Collections::emptyList).stream()
+                        .map(usersById::get)
+                        .collect(Collectors.toList()));
+            }
+            sessions.add(session);
+        }
+        return sessions;
+    }
+
+    /**
+     * @throws BadRequestException when the id does not match any teacher, rather than saving the session without one
+     */
+    protected Teacher resolveTeacher(Long teacherId) {
+        if (teacherId == null) {
+            return null;
+        }
+
+        Teacher teacher = this.teacherService.findOrLoad(teacherId);
+        if (teacher == null) {
+            throw new BadRequestException("Unknown teacher id: " + teacherId);
+        }
+        return teacher;
+    }
+
+    private Map<Long, User> resolveUsers(Set<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<Long, User> usersById = new HashMap<>();
+        List<Long> knownIds = userIds.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        for (User user : this.userService.findAllById(knownIds)) {
+            usersById.put(user.getId(), user);
+        }
+
+        if (usersById.size() != userIds.size()) {
+            List<Long> unknownIds = userIds.stream().filter(id -> !usersById.containsKey(id)).collect(Collectors.toList());
+            throw new BadRequestException("Unknown user ids: " + unknownIds);
+        }
+        return usersById;
+    }
 
 
     @Mappings({
@@ -39,4 +123,29 @@ public abstract class SessionMapper implements EntityMapper<SessionDto, Session>
             @Mapping(target = "users", expression = "java(Optional.ofNullable(session.getUsers()).orElseGet(Collections::emptyList).stream().map(u -> u.getId()).collect(Collectors.toList()))"),
     })
     public abstract SessionDto toDto(Session session);
+
+    // Read model: participants are given as ids, so session.getUsers() is never touched
+    @Named("withoutUsers")
+    @Mappings({
+            @Mapping(source = "description", target = "description"),
+            @Mapping(source = "session.teacher.id", target = "teacher_id"),
+            @Mapping(target = "users", ignore = true),
+    })
+    public abstract SessionDto toDtoWithoutUsers(Session session);
+
+    public SessionDto toDto(Session session, List<Long> participantIds) {
+        SessionDto sessionDto = toDtoWithoutUsers(session);
+        if (sessionDto != null) {
+            sessionDto.setUsers(participantIds);
+        }
+        return sessionDto;
+    }
+
+    public List<SessionDto> toDto(List<Session> sessions, Map<Long, List<Long>> participantIds) {
+        List<SessionDto> sessionDtos = new ArrayList<>(sessions.size());
+        for (Session session : sessions) {
+            sessionDtos.add(toDto(session, participantIds.getOrDefault(session.getId(), Collections.emptyList())));
+        }
+        return sessionDtos;
+    }
 }
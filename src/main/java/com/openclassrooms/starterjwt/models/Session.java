@@ -3,11 +3,13 @@ package com.openclassrooms.starterjwt.models;
 
 import lombok.*;
 import lombok.experimental.Accessors;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.UpdateTimestamp;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 import javax.persistence.*;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
@@ -16,7 +18,14 @@ import java.util.Date;
 import java.util.List;
 
 @Entity
-@Table(name = "SESSIONS")
+@Table(name = "SESSIONS", indexes = {
+        // Date range scans, in the (date, id) order used for paging
+        @Index(name = "idx_sessions_date", columnList = "date, id"),
+        @Index(name = "idx_sessions_teacher_date", columnList = "teacher_id, date"),
+        // Delta sync reads the sessions updated since a watermark
+        @Index(name = "idx_sessions_updated_at", columnList = "updated_at")})
+@NamedEntityGraph(name = Session.LIST_GRAPH, attributeNodes = @NamedAttributeNode("teacher"))
+@NamedEntityGraph(name = Session.DETAIL_GRAPH, attributeNodes = {@NamedAttributeNode("teacher"), @NamedAttributeNode("users")})
 @EntityListeners(AuditingEntityListener.class)
 @Data
 @Accessors(chain = true)
@@ -26,6 +35,12 @@ import java.util.List;
 @AllArgsConstructor
 @ToString
 public class Session {
+    // Lists join the teacher and load participants lazily, in batches
+    public static final String LIST_GRAPH = "Session.list";
+
+    // A single session is read with its teacher and participants in one query
+    public static final String DETAIL_GRAPH = "Session.detail";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -41,22 +56,31 @@ public class Session {
     @Size(max = 2500)
     private String description;
 
+    // Maximum number of participants, unlimited when null
+    @Min(1)
+    private Integer capacity;
+
     @OneToOne
     @JoinColumn(name = "teacher_id", referencedColumnName = "id")
     private Teacher teacher;
 
-    @ManyToMany(fetch = FetchType.EAGER)
+    @ManyToMany(fetch = FetchType.LAZY)
+    @BatchSize(size = 100)
     @JoinTable(
             name = "PARTICIPATE",
             joinColumns = @JoinColumn( name = "session_id" ),
-            inverseJoinColumns = @JoinColumn( name = "user_id" ) )
+            inverseJoinColumns = @JoinColumn( name = "user_id" ),
+            uniqueConstraints = @UniqueConstraint(columnNames = {"session_id", "user_id"}),
+            // The unique key serves lookups by session; this one serves "sessions of a user"
+            indexes = @Index(name = "idx_participate_user", columnList = "user_id, session_id") )
     private List<User> users;
 
     @CreatedDate
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
 
+    // Microseconds, so that two changes within the same second still get distinct ETags
     @UpdateTimestamp
-    @Column(name = "updated_at")
+    @Column(name = "updated_at", columnDefinition = "datetime(6)")
     private LocalDateTime updatedAt;
 }
@@ -0,0 +1,27 @@
+package com.openclassrooms.starterjwt.models;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Trace of a deleted session, so that delta sync clients learn about the deletion. Session ids are
+ * never reused, hence one row per id.
+ */
+@Entity
+@Table(name = "SESSION_TOMBSTONES", indexes = @Index(name = "idx_session_tombstones_deleted_at", columnList = "deleted_at"))
+@Data
+@Accessors(chain = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class SessionTombstone {
+    @Id
+    @Column(name = "session_id")
+    private Long sessionId;
+
+    @Column(name = "deleted_at", nullable = false)
+    private LocalDateTime deletedAt;
+}
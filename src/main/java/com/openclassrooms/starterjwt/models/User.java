@@ -56,7 +56,7 @@ public class User {
   private LocalDateTime createdAt;
 
   @UpdateTimestamp
-  @Column(name = "updated_at")
+  @Column(name = "updated_at", columnDefinition = "datetime(6)")
   private LocalDateTime updatedAt;
 
 }
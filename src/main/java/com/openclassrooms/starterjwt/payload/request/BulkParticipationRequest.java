@@ -0,0 +1,30 @@
+package com.openclassrooms.starterjwt.payload.request;
+
+import java.util.List;
+
+import javax.validation.constraints.NotNull;
+
+import lombok.Data;
+
+/**
+ * Either one session with many users (sessionId + userIds) or one user across many sessions
+ * (userId + sessionIds).
+ */
+@Data
+public class BulkParticipationRequest {
+  public enum Action {
+    ADD,
+    REMOVE
+  }
+
+  @NotNull
+  private Action action;
+
+  private Long sessionId;
+
+  private List<Long> userIds;
+
+  private Long userId;
+
+  private List<Long> sessionIds;
+}
@@ -0,0 +1,14 @@
+package com.openclassrooms.starterjwt.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Row count and latest update time of a table, read in one aggregate query as a cheap validator
+ * for list responses: any insert, update or delete changes at least one of the two.
+ */
+public interface Freshness {
+    long getCount();
+
+    // Null when the table is empty
+    LocalDateTime getLastUpdated();
+}
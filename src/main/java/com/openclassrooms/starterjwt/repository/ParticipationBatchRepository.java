@@ -0,0 +1,60 @@
+package com.openclassrooms.starterjwt.repository;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Bulk writes to the PARTICIPATE join table, sent as one JDBC batch. Takes part in the surrounding JPA
+ * transaction; each returned count is 1 when the row was written and 0 when it was skipped.
+ */
+@Repository
+public class ParticipationBatchRepository {
+    // Same conditions as SessionRepository.addParticipant
+    private static final String INSERT_SQL = "insert into PARTICIPATE (session_id, user_id) "
+            + "select s.id, u.id from SESSIONS s, USERS u where s.id = ? and u.id = ? "
+            + "and not exists (select 1 from PARTICIPATE p where p.session_id = s.id and p.user_id = u.id) "
+            + "and (s.capacity is null or s.capacity > (select count(*) from PARTICIPATE c where c.session_id = s.id))";
+
+    private static final String DELETE_SQL = "delete from PARTICIPATE where session_id = ? and user_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ParticipationBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // sessionIds.get(i) and userIds.get(i) form the i-th pair
+    public int[] addAll(List<Long> sessionIds, List<Long> userIds) {
+        return this.jdbcTemplate.batchUpdate(INSERT_SQL, new PairSetter(sessionIds, userIds));
+    }
+
+    public int[] removeAll(List<Long> sessionIds, List<Long> userIds) {
+        return this.jdbcTemplate.batchUpdate(DELETE_SQL, new PairSetter(sessionIds, userIds));
+    }
+
+    private static final class PairSetter implements BatchPreparedStatementSetter {
+        private final List<Long> sessionIds;
+        private final List<Long> userIds;
+
+        PairSetter(List<Long> sessionIds, List<Long> userIds) {
+            this.sessionIds = sessionIds;
+            this.userIds = userIds;
+        }
+
+        @Override
+        public void setValues(PreparedStatement ps, int i) throws SQLException {
+            ps.setLong(1, this.sessionIds.get(i));
+            ps.setLong(2, this.userIds.get(i));
+        }
+
+        @Override
+        public int getBatchSize() {
+            return this.sessionIds.size();
+        }
+    }
+}
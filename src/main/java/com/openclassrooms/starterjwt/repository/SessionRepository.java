@@ -1,9 +1,117 @@
 package com.openclassrooms.starterjwt.repository;
 
 import com.openclassrooms.starterjwt.models.Session;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
 @Repository
-public interface SessionRepository  extends JpaRepository<Session, Long> {
+public interface SessionRepository  extends JpaRepository<Session, Long>, JpaSpecificationExecutor<Session> {
+    @Override
+    @EntityGraph(Session.LIST_GRAPH)
+    List<Session> findAll();
+
+    @Override
+    @EntityGraph(Session.LIST_GRAPH)
+    Optional<Session> findById(Long id);
+
+    @Override
+    @EntityGraph(Session.LIST_GRAPH)
+    Page<Session> findAll(Specification<Session> spec, Pageable pageable);
+
+    @Query("select count(s) as count, max(s.updatedAt) as lastUpdated from Session s")
+    Freshness findFreshness();
+
+    @EntityGraph(Session.LIST_GRAPH)
+    @Query("select s from Session s where s.updatedAt >= :since order by s.updatedAt asc, s.id asc")
+    List<Session> findUpdatedSince(@Param("since") LocalDateTime since);
+
+    @Query("select s.updatedAt from Session s where s.id = :id")
+    LocalDateTime findUpdatedAtById(@Param("id") Long id);
+
+    // Participation writes bypass the entity, so they bump updated_at themselves
+    @Modifying
+    @Query("update Session s set s.updatedAt = :now where s.id in :ids")
+    int touch(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    // Explicit opt-in to loading the participants as full User entities
+    @EntityGraph(Session.DETAIL_GRAPH)
+    Optional<Session> findWithParticipantsById(Long id);
+
+    // (session id, user id) pairs read from the join table alone, without loading any User
+    @Query(value = "select session_id, user_id from PARTICIPATE where session_id in (:sessionIds) order by session_id, user_id",
+            nativeQuery = true)
+    List<Object[]> findParticipantIds(@Param("sessionIds") Collection<Long> sessionIds);
+
+    @EntityGraph(Session.LIST_GRAPH)
+    Slice<Session> findAllByOrderByDateAscIdAsc(Pageable pageable);
+
+    @EntityGraph(Session.LIST_GRAPH)
+    @Query("select s from Session s where s.date > :date or (s.date = :date and s.id > :id) order by s.date asc, s.id asc")
+    Slice<Session> findPageAfter(@Param("date") Date date, @Param("id") Long id, Pageable pageable);
+
+    // Sessions a user takes part in, read from PARTICIPATE through its user_id index
+    @EntityGraph(Session.LIST_GRAPH)
+    @Query("select s from Session s join s.users u where u.id = :userId order by s.date asc, s.id asc")
+    Slice<Session> findParticipantPage(@Param("userId") Long userId, Pageable pageable);
+
+    @EntityGraph(Session.LIST_GRAPH)
+    @Query("select s from Session s join s.users u where u.id = :userId "
+            + "and (s.date > :date or (s.date = :date and s.id > :id)) order by s.date asc, s.id asc")
+    Slice<Session> findParticipantPageAfter(@Param("userId") Long userId, @Param("date") Date date, @Param("id") Long id,
+                                            Pageable pageable);
+
+    // Must be consumed inside a transaction and closed; rows are fetched from the driver in batches
+    @EntityGraph(Session.LIST_GRAPH)
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<Session> streamAllByOrderByDateAscIdAsc();
+
+    // Seats left in a session, Long.MAX_VALUE (SeatAllocator.NO_LIMIT) without capacity, null for an unknown session
+    @Query(value = "select case when s.capacity is null then 9223372036854775807 "
+            + "else s.capacity - (select count(*) from PARTICIPATE p where p.session_id = s.id) end "
+            + "from SESSIONS s where s.id = :sessionId",
+            nativeQuery = true)
+    Long findRemainingSeats(@Param("sessionId") Long sessionId);
+
+    // Serializes the bookings of one session, so that the capacity check of addParticipant cannot race
+    @Query(value = "select id from SESSIONS where id = :sessionId for update", nativeQuery = true)
+    Long lockById(@Param("sessionId") Long sessionId);
+
+    // Locks several sessions at once, in id order so that concurrent bulk bookings cannot deadlock
+    @Query(value = "select id from SESSIONS where id in (:sessionIds) order by id for update", nativeQuery = true)
+    List<Number> lockAllById(@Param("sessionIds") Collection<Long> sessionIds);
+
+    @Query("select s.id from Session s where s.id in :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    // Inserts the row only when both the session and the user exist, the pair is not already present
+    // and the session is not full
+    @Modifying
+    @Query(value = "insert into PARTICIPATE (session_id, user_id) "
+            + "select s.id, u.id from SESSIONS s, USERS u where s.id = :sessionId and u.id = :userId "
+            + "and not exists (select 1 from PARTICIPATE p where p.session_id = s.id and p.user_id = u.id) "
+            + "and (s.capacity is null or s.capacity > (select count(*) from PARTICIPATE c where c.session_id = s.id))",
+            nativeQuery = true)
+    int addParticipant(@Param("sessionId") Long sessionId, @Param("userId") Long userId);
+
+    @Modifying
+    @Query(value = "delete from PARTICIPATE where session_id = :sessionId and user_id = :userId", nativeQuery = true)
+    int removeParticipant(@Param("sessionId") Long sessionId, @Param("userId") Long userId);
 }
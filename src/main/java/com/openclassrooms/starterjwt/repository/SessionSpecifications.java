@@ -0,0 +1,35 @@
+package com.openclassrooms.starterjwt.repository;
+
+import com.openclassrooms.starterjwt.models.Session;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.Date;
+
+/**
+ * Search criteria on sessions. Each one is a plain comparison on an indexed column (or a prefix LIKE),
+ * so that only the criteria actually given end up in the WHERE clause and the database can range-scan.
+ */
+public final class SessionSpecifications {
+    private SessionSpecifications() {
+    }
+
+    // Inclusive
+    public static Specification<Session> dateFrom(Date from) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("date"), from);
+    }
+
+    // Exclusive
+    public static Specification<Session> dateBefore(Date to) {
+        return (root, query, cb) -> cb.lessThan(root.get("date"), to);
+    }
+
+    public static Specification<Session> teacherId(Long teacherId) {
+        return (root, query, cb) -> cb.equal(root.get("teacher").get("id"), teacherId);
+    }
+
+    // Case sensitivity follows the column collation (case-insensitive with the default MySQL one)
+    public static Specification<Session> nameStartsWith(String prefix) {
+        String pattern = prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return (root, query, cb) -> cb.like(root.get("name"), pattern, '\\');
+    }
+}
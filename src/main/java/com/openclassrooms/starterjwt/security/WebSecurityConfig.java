@@ -1,6 +1,7 @@
 package com.openclassrooms.starterjwt.security;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -10,12 +11,12 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 import com.openclassrooms.starterjwt.security.jwt.AuthEntryPointJwt;
 import com.openclassrooms.starterjwt.security.jwt.AuthTokenFilter;
+import com.openclassrooms.starterjwt.security.password.BoundedPasswordEncoder;
+import com.openclassrooms.starterjwt.security.password.CalibratedBCryptPasswordEncoder;
 import com.openclassrooms.starterjwt.security.services.UserDetailsServiceImpl;
 
 @Configuration
@@ -31,6 +32,25 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
   @Autowired
   private AuthEntryPointJwt unauthorizedHandler;
 
+  // 0 uses half of the available processors, keeping the rest for the other endpoints
+  @Value("${oc.app.passwordHashing.threads:0}")
+  private int passwordHashingThreads;
+
+  @Value("${oc.app.passwordHashing.queueCapacity:64}")
+  private int passwordHashingQueueCapacity;
+
+  @Value("${oc.app.passwordHashing.timeoutMs:5000}")
+  private long passwordHashingTimeoutMs;
+
+  @Value("${oc.app.passwordHashing.targetMs:80}")
+  private long passwordHashingTargetMs;
+
+  @Value("${oc.app.passwordHashing.minStrength:10}")
+  private int passwordHashingMinStrength;
+
+  @Value("${oc.app.passwordHashing.maxStrength:14}")
+  private int passwordHashingMaxStrength;
+
   @Bean
   public AuthTokenFilter authenticationJwtTokenFilter() {
     return new AuthTokenFilter();
@@ -48,8 +68,16 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
   }
 
   @Bean
-  public PasswordEncoder passwordEncoder() {
-    return new BCryptPasswordEncoder();
+  public BoundedPasswordEncoder passwordEncoder() {
+    int threads = passwordHashingThreads > 0
+        ? passwordHashingThreads
+        : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    CalibratedBCryptPasswordEncoder bcrypt = CalibratedBCryptPasswordEncoder.calibrate(
+        passwordHashingTargetMs, passwordHashingMinStrength, passwordHashingMaxStrength);
+
+    return new BoundedPasswordEncoder(bcrypt, threads,
+        passwordHashingQueueCapacity, passwordHashingTimeoutMs);
   }
 
   @Override
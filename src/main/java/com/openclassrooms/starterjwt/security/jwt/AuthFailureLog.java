@@ -0,0 +1,107 @@
+package com.openclassrooms.starterjwt.security.jwt;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts authentication failures per type and logs only the first few of each type per interval,
+ * followed by one summary line per interval, so that log volume stays flat however many bad tokens
+ * are sent. Totals since startup are kept for monitoring.
+ */
+@Component
+public class AuthFailureLog {
+  private static final Logger logger = LoggerFactory.getLogger(AuthFailureLog.class);
+
+  public enum Type {
+    INVALID_SIGNATURE("Invalid JWT signature"),
+    MALFORMED_TOKEN("Invalid JWT token"),
+    EXPIRED_TOKEN("JWT token is expired"),
+    UNSUPPORTED_TOKEN("JWT token is unsupported"),
+    EMPTY_CLAIMS("JWT claims string is empty"),
+    AUTHENTICATION_ERROR("Cannot set user authentication"),
+    UNAUTHORIZED("Unauthorized error");
+
+    private final String description;
+
+    Type(String description) {
+      this.description = description;
+    }
+  }
+
+  private static final Type[] TYPES = Type.values();
+
+  private final LongAdder[] totals = new LongAdder[TYPES.length];
+
+  private final AtomicLongArray intervalCounts = new AtomicLongArray(TYPES.length);
+
+  private final LongAdder suppressed = new LongAdder();
+
+  private final int samplesPerInterval;
+
+  public AuthFailureLog(@Value("${oc.app.authFailureLog.samplesPerInterval:1}") int samplesPerInterval) {
+    this.samplesPerInterval = samplesPerInterval;
+    for (int i = 0; i < totals.length; i++) {
+      totals[i] = new LongAdder();
+    }
+  }
+
+  public void record(Type type, String detail) {
+    if (count(type)) {
+      logger.warn("{}: {}", type.description, detail);
+    }
+  }
+
+  public void record(Type type, Throwable cause) {
+    if (count(type)) {
+      logger.warn("{}: {}", type.description, cause.toString(), cause);
+    }
+  }
+
+  /**
+   * Logs the failures counted since the previous call and starts a new interval.
+   */
+  @Scheduled(fixedRateString = "${oc.app.authFailureLog.intervalMs:60000}")
+  public void flush() {
+    StringBuilder summary = null;
+    for (Type type : TYPES) {
+      long count = intervalCounts.getAndSet(type.ordinal(), 0);
+      if (count == 0) {
+        continue;
+      }
+      summary = summary == null ? new StringBuilder() : summary.append(", ");
+      summary.append(type.name().toLowerCase()).append('=').append(count);
+    }
+
+    if (summary != null) {
+      logger.warn("Authentication failures since last summary: {}", summary);
+    }
+  }
+
+  public long getTotalCount(Type type) {
+    return totals[type.ordinal()].sum();
+  }
+
+  public long getIntervalCount(Type type) {
+    return intervalCounts.get(type.ordinal());
+  }
+
+  public long getSuppressedCount() {
+    return suppressed.sum();
+  }
+
+  // Returns whether this occurrence is one of the samples to log in full
+  private boolean count(Type type) {
+    totals[type.ordinal()].increment();
+    if (intervalCounts.incrementAndGet(type.ordinal()) <= samplesPerInterval) {
+      return true;
+    }
+    suppressed.increment();
+    return false;
+  }
+}
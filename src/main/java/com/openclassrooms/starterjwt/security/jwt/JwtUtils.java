@@ -1,9 +1,13 @@
 package com.openclassrooms.starterjwt.security.jwt;
 
+import java.security.Key;
 import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import javax.annotation.PostConstruct;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
@@ -11,10 +15,19 @@ import org.springframework.stereotype.Component;
 import com.openclassrooms.starterjwt.security.services.UserDetailsImpl;
 
 import io.jsonwebtoken.*;
+import io.jsonwebtoken.impl.TextCodec;
 
 @Component
 public class JwtUtils {
-  private static final Logger logger = LoggerFactory.getLogger(JwtUtils.class);
+  private static final SignatureAlgorithm SIGNATURE_ALGORITHM = SignatureAlgorithm.HS512;
+
+  private static final String CLAIM_ID = "id";
+  private static final String CLAIM_FIRST_NAME = "firstName";
+  private static final String CLAIM_LAST_NAME = "lastName";
+  private static final String CLAIM_ADMIN = "admin";
+  private static final String CLAIM_TOKEN_TYPE = "type";
+
+  private static final String REFRESH_TOKEN_TYPE = "refresh";
 
   @Value("${oc.app.jwtSecret}")
   private String jwtSecret;
@@ -22,38 +35,138 @@ public class JwtUtils {
   @Value("${oc.app.jwtExpirationMs}")
   private int jwtExpirationMs;
 
+  @Value("${oc.app.jwtRefreshExpirationMs:2592000000}")
+  private long jwtRefreshExpirationMs;
+
+  // When enabled, tokens carry the principal's profile so that AuthTokenFilter does not reload the user
+  @Value("${oc.app.jwtStatelessPrincipal:false}")
+  private boolean statelessPrincipal;
+
+  // Derived once from jwtSecret: the parser is immutable once configured and safe to share between threads
+  private Key signingKey;
+
+  private JwtParser jwtParser;
+
+  @Autowired
+  private TokenRevocationStore revocationStore;
+
+  @Autowired
+  private AuthFailureLog authFailureLog;
+
+  @PostConstruct
+  void init() {
+    // Same key derivation as signWith(HS512, String): the secret is read as base64
+    signingKey = new SecretKeySpec(TextCodec.BASE64.decode(jwtSecret), SIGNATURE_ALGORITHM.getJcaName());
+    jwtParser = Jwts.parser().setSigningKey(signingKey);
+  }
+
   public String generateJwtToken(Authentication authentication) {
+    return generateAccessToken((UserDetailsImpl) authentication.getPrincipal());
+  }
+
+  public String generateAccessToken(UserDetailsImpl userPrincipal) {
+    Date now = new Date();
+    JwtBuilder builder = Jwts.builder()
+        .setId(newTokenId())
+        .setSubject((userPrincipal.getUsername()))
+        .setIssuedAt(now)
+        .setExpiration(new Date(now.getTime() + jwtExpirationMs))
+        .claim(CLAIM_ID, userPrincipal.getId());
+
+    if (statelessPrincipal) {
+      builder.claim(CLAIM_FIRST_NAME, userPrincipal.getFirstName())
+          .claim(CLAIM_LAST_NAME, userPrincipal.getLastName())
+          .claim(CLAIM_ADMIN, Boolean.TRUE.equals(userPrincipal.getAdmin()));
+    }
 
-    UserDetailsImpl userPrincipal = (UserDetailsImpl) authentication.getPrincipal();
+    return builder.signWith(SIGNATURE_ALGORITHM, signingKey).compact();
+  }
 
+  // Long-lived token that can only be exchanged for new access tokens, never used to call the API
+  public String generateRefreshToken(UserDetailsImpl userPrincipal) {
+    Date now = new Date();
     return Jwts.builder()
-        .setSubject((userPrincipal.getUsername()))
-        .setIssuedAt(new Date())
-        .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs))
-        .signWith(SignatureAlgorithm.HS512, jwtSecret)
+        .setId(newTokenId())
+        .setSubject(userPrincipal.getUsername())
+        .setIssuedAt(now)
+        .setExpiration(new Date(now.getTime() + jwtRefreshExpirationMs))
+        .claim(CLAIM_ID, userPrincipal.getId())
+        .claim(CLAIM_TOKEN_TYPE, REFRESH_TOKEN_TYPE)
+        .signWith(SIGNATURE_ALGORITHM, signingKey)
         .compact();
   }
 
-  public String getUserNameFromJwtToken(String token) {
-    return Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(token).getBody().getSubject();
+  public boolean isRefreshToken(Claims claims) {
+    return REFRESH_TOKEN_TYPE.equals(claims.get(CLAIM_TOKEN_TYPE));
+  }
+
+  public boolean isRevoked(Claims claims) {
+    return revocationStore.isRevoked(claims.getId(), getUserId(claims), claims.getIssuedAt());
+  }
+
+  public void revoke(Claims claims) {
+    revocationStore.revokeToken(claims.getId(), claims.getExpiration());
+  }
+
+  public Long getUserId(Claims claims) {
+    Object id = claims.get(CLAIM_ID);
+    return id instanceof Number ? ((Number) id).longValue() : null;
   }
 
-  public boolean validateJwtToken(String authToken) {
+  public boolean isStatelessPrincipal() {
+    return statelessPrincipal;
+  }
+
+  /**
+   * Rebuilds the principal from verified claims, without its password.
+   *
+   * @return the principal, or null when the token was issued without the profile claims
+   */
+  public UserDetailsImpl getPrincipalFromClaims(Claims claims) {
+    Long id = getUserId(claims);
+    if (id == null || claims.get(CLAIM_ADMIN) == null) {
+      return null;
+    }
+
+    return UserDetailsImpl
+        .builder()
+        .id(id)
+        .username(claims.getSubject())
+        .firstName(claims.get(CLAIM_FIRST_NAME, String.class))
+        .lastName(claims.get(CLAIM_LAST_NAME, String.class))
+        .admin(Boolean.TRUE.equals(claims.get(CLAIM_ADMIN, Boolean.class)))
+        .build();
+  }
+
+  /**
+   * Parses and verifies the token in a single pass.
+   *
+   * @return the verified claims, or null when the token is invalid or expired
+   */
+  public Claims parseVerifiedClaims(String token) {
     try {
-      Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(authToken);
-      return true;
+      return jwtParser.parseClaimsJws(token).getBody();
     } catch (SignatureException e) {
-      logger.error("Invalid JWT signature: {}", e.getMessage());
+      authFailureLog.record(AuthFailureLog.Type.INVALID_SIGNATURE, e.getMessage());
     } catch (MalformedJwtException e) {
-      logger.error("Invalid JWT token: {}", e.getMessage());
+      authFailureLog.record(AuthFailureLog.Type.MALFORMED_TOKEN, e.getMessage());
     } catch (ExpiredJwtException e) {
-      logger.error("JWT token is expired: {}", e.getMessage());
+      authFailureLog.record(AuthFailureLog.Type.EXPIRED_TOKEN, e.getMessage());
     } catch (UnsupportedJwtException e) {
-      logger.error("JWT token is unsupported: {}", e.getMessage());
+      authFailureLog.record(AuthFailureLog.Type.UNSUPPORTED_TOKEN, e.getMessage());
     } catch (IllegalArgumentException e) {
-      logger.error("JWT claims string is empty: {}", e.getMessage());
+      authFailureLog.record(AuthFailureLog.Type.EMPTY_CLAIMS, e.getMessage());
     }
 
-    return false;
+    return null;
+  }
+
+  // Random non-zero 64-bit id, so that a single token can be revoked before it expires
+  private static String newTokenId() {
+    long id;
+    do {
+      id = ThreadLocalRandom.current().nextLong();
+    } while (id == 0);
+    return Long.toHexString(id);
   }
 }
@@ -0,0 +1,175 @@
+package com.openclassrooms.starterjwt.security.jwt;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Open-addressing hash table of non-zero long keys to positive long values, stored as interleaved
+ * key/value pairs in a single array (16 bytes per slot, no boxing). Lookups are lock-free optimistic
+ * reads; writes are serialized.
+ */
+final class RevocationTable {
+  private static final int MIN_SLOTS = 16;
+
+  private final StampedLock lock = new StampedLock();
+
+  private long[] slots = new long[MIN_SLOTS * 2];
+
+  private volatile int size;
+
+  /**
+   * @return the value stored for the key, or 0 when absent
+   */
+  long get(long key) {
+    if (size == 0) {
+      return 0;
+    }
+
+    long stamp = lock.tryOptimisticRead();
+    long value = find(slots, key);
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock();
+      try {
+        value = find(slots, key);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Stores the value, keeping the largest one when the key is already present.
+   */
+  void put(long key, long value) {
+    long stamp = lock.writeLock();
+    try {
+      if ((size + 1) * 4L > capacity(slots) * 3L) {
+        slots = rehash(slots, capacity(slots) * 2, Long.MIN_VALUE);
+      }
+      if (insert(slots, key, value)) {
+        size++;
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Drops every entry whose value is lower than the threshold.
+   */
+  void removeValuesBelow(long threshold) {
+    long stamp = lock.writeLock();
+    try {
+      int remaining = 0;
+      for (int i = 0; i < slots.length; i += 2) {
+        if (slots[i] != 0 && slots[i + 1] >= threshold) {
+          remaining++;
+        }
+      }
+      if (remaining == size) {
+        return;
+      }
+      slots = rehash(slots, slotsFor(remaining), threshold);
+      size = remaining;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  void writeTo(DataOutputStream out) throws IOException {
+    long stamp = lock.readLock();
+    try {
+      out.writeInt(size);
+      for (int i = 0; i < slots.length; i += 2) {
+        if (slots[i] != 0) {
+          out.writeLong(slots[i]);
+          out.writeLong(slots[i + 1]);
+        }
+      }
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Adds the entries written by {@link #writeTo}, skipping those whose value is below the threshold.
+   */
+  void readFrom(DataInputStream in, long threshold) throws IOException {
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      long key = in.readLong();
+      long value = in.readLong();
+      if (key != 0 && value >= threshold) {
+        put(key, value);
+      }
+    }
+  }
+
+  private static long find(long[] slots, long key) {
+    int mask = capacity(slots) - 1;
+    int index = mix(key) & mask;
+    for (int probes = 0; probes <= mask; probes++) {
+      long candidate = slots[index * 2];
+      if (candidate == key) {
+        return slots[index * 2 + 1];
+      }
+      if (candidate == 0) {
+        return 0;
+      }
+      index = (index + 1) & mask;
+    }
+    return 0;
+  }
+
+  private static boolean insert(long[] slots, long key, long value) {
+    int mask = capacity(slots) - 1;
+    int index = mix(key) & mask;
+    while (true) {
+      long candidate = slots[index * 2];
+      if (candidate == key) {
+        slots[index * 2 + 1] = Math.max(slots[index * 2 + 1], value);
+        return false;
+      }
+      if (candidate == 0) {
+        slots[index * 2 + 1] = value;
+        slots[index * 2] = key;
+        return true;
+      }
+      index = (index + 1) & mask;
+    }
+  }
+
+  private static long[] rehash(long[] slots, int capacity, long threshold) {
+    long[] resized = new long[capacity * 2];
+    for (int i = 0; i < slots.length; i += 2) {
+      if (slots[i] != 0 && slots[i + 1] >= threshold) {
+        insert(resized, slots[i], slots[i + 1]);
+      }
+    }
+    return resized;
+  }
+
+  private static int slotsFor(int entries) {
+    int capacity = MIN_SLOTS;
+    while (entries * 4L > capacity * 3L) {
+      capacity *= 2;
+    }
+    return capacity;
+  }
+
+  private static int capacity(long[] slots) {
+    return slots.length / 2;
+  }
+
+  private static int mix(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32));
+  }
+}
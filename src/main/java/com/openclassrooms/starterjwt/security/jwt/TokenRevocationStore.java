@@ -0,0 +1,178 @@
+package com.openclassrooms.starterjwt.security.jwt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Revoked token ids and per-user "issued before" watermarks, checked on every authenticated request
+ * without touching the database. Entries are dropped once every token they could match has expired,
+ * and the whole set is written to a small binary file so that it survives a restart.
+ */
+@Component
+public class TokenRevocationStore {
+  private static final Logger logger = LoggerFactory.getLogger(TokenRevocationStore.class);
+
+  private static final int FILE_MAGIC = 0x52564B31;
+
+  // token id -> expiry of the token, in epoch seconds
+  private final RevocationTable revokedTokens = new RevocationTable();
+
+  // user id -> tokens issued at or before this epoch second are revoked
+  private final RevocationTable revokedUsers = new RevocationTable();
+
+  private final AtomicBoolean dirty = new AtomicBoolean();
+
+  private final String file;
+
+  private final long maxTokenLifetimeSeconds;
+
+  public TokenRevocationStore(
+      @Value("${oc.app.revocation.file:}") String file,
+      @Value("${oc.app.jwtExpirationMs}") long jwtExpirationMs,
+      @Value("${oc.app.jwtRefreshExpirationMs:2592000000}") long jwtRefreshExpirationMs) {
+    this.file = file;
+    this.maxTokenLifetimeSeconds = Math.max(jwtExpirationMs, jwtRefreshExpirationMs) / 1000;
+  }
+
+  public void revokeToken(String tokenId, Date expiresAt) {
+    long key = parseTokenId(tokenId);
+    if (key == 0 || expiresAt == null) {
+      return;
+    }
+    revokedTokens.put(key, toEpochSeconds(expiresAt));
+    dirty.set(true);
+  }
+
+  /**
+   * Revokes every token issued to the user up to now.
+   */
+  public void revokeUser(Long userId) {
+    if (userId == null || userId == 0) {
+      return;
+    }
+    revokedUsers.put(userId, nowSeconds());
+    dirty.set(true);
+  }
+
+  public boolean isRevoked(String tokenId, Long userId, Date issuedAt) {
+    if (tokenId != null && revokedTokens.size() > 0) {
+      long key = parseTokenId(tokenId);
+      if (key != 0 && revokedTokens.get(key) != 0) {
+        return true;
+      }
+    }
+
+    if (userId != null && issuedAt != null && revokedUsers.size() > 0) {
+      long watermark = revokedUsers.get(userId);
+      return watermark != 0 && toEpochSeconds(issuedAt) <= watermark;
+    }
+
+    return false;
+  }
+
+  public int getRevokedTokenCount() {
+    return revokedTokens.size();
+  }
+
+  public int getRevokedUserCount() {
+    return revokedUsers.size();
+  }
+
+  @Scheduled(fixedDelayString = "${oc.app.revocation.purgeIntervalMs:60000}")
+  public void purgeAndPersist() {
+    long now = nowSeconds();
+    int before = revokedTokens.size() + revokedUsers.size();
+    revokedTokens.removeValuesBelow(now);
+    revokedUsers.removeValuesBelow(now - maxTokenLifetimeSeconds);
+    if (revokedTokens.size() + revokedUsers.size() != before) {
+      dirty.set(true);
+    }
+    persist();
+  }
+
+  @PostConstruct
+  void load() {
+    if (!StringUtils.hasText(file) || !Files.exists(Paths.get(file))) {
+      return;
+    }
+
+    long now = nowSeconds();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(file))))) {
+      if (in.readInt() != FILE_MAGIC) {
+        logger.warn("Ignoring revocation file {}: unknown format", file);
+        return;
+      }
+      revokedTokens.readFrom(in, now);
+      revokedUsers.readFrom(in, now - maxTokenLifetimeSeconds);
+      logger.info("Loaded {} revoked tokens and {} revoked users", revokedTokens.size(), revokedUsers.size());
+    } catch (IOException e) {
+      logger.warn("Cannot read revocation file {}: {}", file, e.getMessage());
+    }
+  }
+
+  @PreDestroy
+  void persist() {
+    if (!StringUtils.hasText(file) || !dirty.getAndSet(false)) {
+      return;
+    }
+
+    Path target = Paths.get(file).toAbsolutePath();
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+    try {
+      Files.createDirectories(target.getParent());
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+        out.writeInt(FILE_MAGIC);
+        revokedTokens.writeTo(out);
+        revokedUsers.writeTo(out);
+      }
+      try {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      dirty.set(true);
+      logger.warn("Cannot write revocation file {}: {}", file, e.getMessage());
+    }
+  }
+
+  // Token ids are issued by JwtUtils as non-zero 64-bit hex strings; anything else cannot be revoked by id
+  private static long parseTokenId(String tokenId) {
+    if (tokenId == null || tokenId.isEmpty() || tokenId.length() > 16) {
+      return 0;
+    }
+    try {
+      return Long.parseUnsignedLong(tokenId, 16);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  private static long toEpochSeconds(Date date) {
+    return date.getTime() / 1000;
+  }
+
+  private static long nowSeconds() {
+    return System.currentTimeMillis() / 1000;
+  }
+}
@@ -0,0 +1,166 @@
+package com.openclassrooms.starterjwt.security.password;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import com.openclassrooms.starterjwt.exception.ServiceUnavailableException;
+
+/**
+ * Runs the hashing of a delegate encoder on a dedicated, size-limited pool so that a burst of
+ * logins or registrations cannot take every CPU away from the other endpoints.
+ * Calls are rejected with {@link ServiceUnavailableException} when the queue is full or the
+ * hash does not complete within the timeout.
+ * <p>
+ * A timed-out hash is cancelled, but BCrypt never checks for interruption: the round runs to
+ * completion and keeps its worker busy meanwhile. The 503 therefore does not free any capacity,
+ * it only stops the caller from waiting; the queue bound is what limits the backlog.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder, DisposableBean {
+  private static final Logger logger = LoggerFactory.getLogger(BoundedPasswordEncoder.class);
+
+  private final PasswordEncoder delegate;
+  private final ThreadPoolExecutor executor;
+  private final long timeoutMs;
+
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder hashCount = new LongAdder();
+  private final LongAdder hashNanos = new LongAdder();
+  private final LongAccumulator maxHashNanos = new LongAccumulator(Math::max, 0);
+
+  // Totals at the previous summary, to log the activity of each interval only
+  private long loggedHashCount;
+  private long loggedHashNanos;
+  private long loggedRejected;
+
+  public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity, long timeoutMs) {
+    this.delegate = delegate;
+    this.timeoutMs = timeoutMs;
+
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("password-hash-");
+    threadFactory.setDaemon(true);
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  @Override
+  public String encode(CharSequence rawPassword) {
+    return submit(() -> delegate.encode(rawPassword));
+  }
+
+  @Override
+  public boolean matches(CharSequence rawPassword, String encodedPassword) {
+    return submit(() -> delegate.matches(rawPassword, encodedPassword));
+  }
+
+  @Override
+  public boolean upgradeEncoding(String encodedPassword) {
+    return delegate.upgradeEncoding(encodedPassword);
+  }
+
+  private <T> T submit(Callable<T> hashing) {
+    Future<T> future;
+    try {
+      future = executor.submit(() -> timed(hashing));
+    } catch (RejectedExecutionException e) {
+      rejected.increment();
+      throw new ServiceUnavailableException("Too many authentication requests, please retry later");
+    }
+
+    try {
+      return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      rejected.increment();
+      throw new ServiceUnavailableException("Too many authentication requests, please retry later");
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableException("Password hashing was interrupted");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private <T> T timed(Callable<T> hashing) throws Exception {
+    long start = System.nanoTime();
+    try {
+      return hashing.call();
+    } finally {
+      long elapsed = System.nanoTime() - start;
+      hashCount.increment();
+      hashNanos.add(elapsed);
+      maxHashNanos.accumulate(elapsed);
+    }
+  }
+
+  public int getQueueDepth() {
+    return executor.getQueue().size();
+  }
+
+  public int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  public long getRejectedCount() {
+    return rejected.sum();
+  }
+
+  public long getHashCount() {
+    return hashCount.sum();
+  }
+
+  public double getAverageHashMillis() {
+    long count = hashCount.sum();
+    return count == 0 ? 0.0 : hashNanos.sum() / 1_000_000.0 / count;
+  }
+
+  public double getMaxHashMillis() {
+    return maxHashNanos.get() / 1_000_000.0;
+  }
+
+  /**
+   * Logs the hashes and rejections since the previous summary, with the current queue depth.
+   * Nothing is logged for an idle interval.
+   */
+  @Scheduled(fixedRateString = "${oc.app.passwordHashing.metricsLogIntervalMs:60000}")
+  public synchronized void logMetrics() {
+    long count = hashCount.sum();
+    long nanos = hashNanos.sum();
+    long rejections = rejected.sum();
+    long intervalCount = count - loggedHashCount;
+    long intervalRejected = rejections - loggedRejected;
+    if (intervalCount == 0 && intervalRejected == 0) {
+      return;
+    }
+
+    long averageMillis = intervalCount == 0 ? 0 : (nanos - loggedHashNanos) / 1_000_000 / intervalCount;
+    logger.info("Password hashing since last summary: hashes={}, avgMs={}, rejected={}, queued={}, active={}, maxMsSinceStart={}",
+        intervalCount, averageMillis, intervalRejected, getQueueDepth(), getActiveCount(), Math.round(getMaxHashMillis()));
+    loggedHashCount = count;
+    loggedHashNanos = nanos;
+    loggedRejected = rejections;
+  }
+
+  @Override
+  public void destroy() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,77 @@
+package com.openclassrooms.starterjwt.security.password;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * BCrypt encoder whose cost is chosen at startup from a latency budget. Stored hashes whose cost
+ * differs from the calibrated one, higher or lower, are reported for upgrade so that they get
+ * rehashed on the next successful login.
+ */
+public class CalibratedBCryptPasswordEncoder extends BCryptPasswordEncoder {
+  private static final Logger logger = LoggerFactory.getLogger(CalibratedBCryptPasswordEncoder.class);
+
+  private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[aby]?\\$(\\d\\d)\\$");
+
+  private static final int WARMUP_ROUNDS = 3;
+
+  private final int strength;
+
+  public CalibratedBCryptPasswordEncoder(int strength) {
+    super(strength);
+    this.strength = strength;
+  }
+
+  /**
+   * Picks the highest cost in [minStrength, maxStrength] whose hash time stays within targetMs,
+   * extrapolating from a measurement at minStrength (each extra round doubles the work).
+   */
+  public static CalibratedBCryptPasswordEncoder calibrate(long targetMs, int minStrength, int maxStrength) {
+    BCryptPasswordEncoder warmup = new BCryptPasswordEncoder(4);
+    for (int i = 0; i < WARMUP_ROUNDS; i++) {
+      warmup.encode("calibration");
+    }
+
+    BCryptPasswordEncoder probe = new BCryptPasswordEncoder(minStrength);
+    long bestNanos = Long.MAX_VALUE;
+    for (int i = 0; i < 2; i++) {
+      long start = System.nanoTime();
+      probe.encode("calibration");
+      bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+    }
+
+    long targetNanos = targetMs * 1_000_000L;
+    int strength = minStrength;
+    long estimatedNanos = bestNanos;
+    while (strength < maxStrength && estimatedNanos * 2 <= targetNanos) {
+      strength++;
+      estimatedNanos *= 2;
+    }
+
+    logger.info("BCrypt cost calibrated to {} (about {} ms per hash, budget {} ms)",
+        strength, estimatedNanos / 1_000_000L, targetMs);
+    return new CalibratedBCryptPasswordEncoder(strength);
+  }
+
+  public int getStrength() {
+    return strength;
+  }
+
+  @Override
+  public boolean upgradeEncoding(String encodedPassword) {
+    int cost = costOf(encodedPassword);
+    return cost > 0 && cost != strength;
+  }
+
+  static int costOf(String encodedPassword) {
+    if (encodedPassword == null) {
+      return -1;
+    }
+    Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+    return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+  }
+}
@@ -0,0 +1,80 @@
+package com.openclassrooms.starterjwt.security.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.openclassrooms.starterjwt.cache.ExpiringCache;
+
+@Component
+public class PrincipalCache {
+  private static final Logger logger = LoggerFactory.getLogger(PrincipalCache.class);
+
+  private final ExpiringCache<String, UserDetailsImpl> cache;
+
+  // Counts at the previous summary
+  private long loggedHits;
+  private long loggedMisses;
+  private long loggedEvictions;
+
+  PrincipalCache(@Value("${oc.app.principalCache.maxSize:10000}") int maxSize,
+      @Value("${oc.app.principalCache.ttlMs:300000}") long ttlMs) {
+    this.cache = new ExpiringCache<>(maxSize, ttlMs);
+  }
+
+  public UserDetailsImpl get(String email) {
+    return cache.get(email);
+  }
+
+  public void put(UserDetailsImpl userDetails) {
+    cache.put(userDetails.getUsername(), userDetails);
+  }
+
+  public void evict(String email) {
+    cache.invalidate(email);
+  }
+
+  public void evictUserId(Long id) {
+    cache.invalidateIf((email, userDetails) -> id.equals(userDetails.getId()));
+  }
+
+  public int size() {
+    return cache.size();
+  }
+
+  public long getHitCount() {
+    return cache.getHitCount();
+  }
+
+  public long getMissCount() {
+    return cache.getMissCount();
+  }
+
+  public long getEvictionCount() {
+    return cache.getEvictionCount();
+  }
+
+  /**
+   * Logs the lookups served from memory or from the database since the previous summary, so that a
+   * TTL or size too small for the traffic shows up. Skipped when no token was authenticated.
+   */
+  @Scheduled(fixedRateString = "${oc.app.principalCache.metricsLogIntervalMs:60000}")
+  public synchronized void logMetrics() {
+    long hits = cache.getHitCount();
+    long misses = cache.getMissCount();
+    long evictions = cache.getEvictionCount();
+    long intervalHits = hits - loggedHits;
+    long intervalMisses = misses - loggedMisses;
+    if (intervalHits == 0 && intervalMisses == 0) {
+      return;
+    }
+
+    logger.info("Principal cache since last summary: hits={}, misses={}, evictions={}, size={}",
+        intervalHits, intervalMisses, evictions - loggedEvictions, cache.size());
+    loggedHits = hits;
+    loggedMisses = misses;
+    loggedEvictions = evictions;
+  }
+}
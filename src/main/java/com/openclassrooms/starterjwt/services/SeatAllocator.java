@@ -0,0 +1,165 @@
+package com.openclassrooms.starterjwt.services;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * In-memory count of the seats left in each session with a capacity, so that once a session is full
+ * the rest of a booking rush is turned away without touching the database. The count is only
+ * advisory: the conditional insert in SessionRepository remains the authority on capacity. A seat
+ * is held from tryReserve until the booking commits or rolls back; while holds are pending, a count
+ * of zero may not last, so the database is asked again before rejecting. The allocator thus only
+ * ever errs on the side of admitting a request.
+ */
+@Component
+public class SeatAllocator {
+    public enum Reservation {
+        // No seat left, the request can be rejected right away
+        FULL,
+        // A seat is held for the caller, who must confirm or cancel it once the booking is over
+        RESERVED,
+        // The count is exhausted by bookings not yet committed; nothing was held, the insert decides
+        UNCHECKED,
+        // The session has no capacity limit (or does not exist), nothing was held
+        UNLIMITED
+    }
+
+    // Returned by the loader for a session without capacity
+    public static final long NO_LIMIT = Long.MAX_VALUE;
+
+    // Stored for sessions without capacity, so that their bookings skip the database lookup too
+    private static final Seats UNLIMITED_SEATS = new Seats(0);
+
+    // Only existing sessions are tracked, so unknown ids never add entries
+    private final ConcurrentHashMap<Long, Seats> seatsBySession = new ConcurrentHashMap<>();
+
+    // Bumped on every invalidation, so that a count loaded while the session was changing is not stored
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder reservedCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * @param loader seats left according to the database, NO_LIMIT when the session has no capacity, or
+     *               null when it does not exist. It runs outside the map, so concurrent bookings of other
+     *               sessions never wait for the query.
+     */
+    public Reservation tryReserve(Long sessionId, Function<Long, Long> loader) {
+        Seats seats = this.seatsBySession.get(sessionId);
+        if (seats == null) {
+            seats = load(sessionId, loader);
+        }
+        if (seats == null || seats == UNLIMITED_SEATS) {
+            return Reservation.UNLIMITED;
+        }
+
+        while (true) {
+            long state = seats.state.get();
+            if (remaining(state) <= 0) {
+                return whenExhausted(sessionId, pending(state), loader);
+            }
+            // The seat and its hold are taken in one step, so that no caller sees the one without the other
+            if (seats.state.compareAndSet(state, pack(remaining(state) - 1, pending(state) + 1))) {
+                this.reservedCount.increment();
+                return Reservation.RESERVED;
+            }
+        }
+    }
+
+    // The held seat became a booking
+    public void confirm(Long sessionId) {
+        update(sessionId, 0, -1);
+    }
+
+    // The booking that held the seat failed or rolled back
+    public void cancel(Long sessionId) {
+        update(sessionId, 1, -1);
+    }
+
+    // Gives back a booked seat after a cancellation
+    public void release(Long sessionId) {
+        update(sessionId, 1, 0);
+    }
+
+    // Forgets the count, or the absence of limit, to be reloaded from the database on the next booking
+    public void invalidate(Long sessionId) {
+        if (sessionId != null) {
+            this.generation.incrementAndGet();
+            this.seatsBySession.remove(sessionId);
+        }
+    }
+
+    public int size() {
+        return this.seatsBySession.size();
+    }
+
+    public long getReservedCount() {
+        return this.reservedCount.sum();
+    }
+
+    public long getRejectedCount() {
+        return this.rejectedCount.sum();
+    }
+
+    // Concurrent first bookings may all query the database; the first count stored wins
+    private Seats load(Long sessionId, Function<Long, Long> loader) {
+        long loadedAt = this.generation.get();
+        Long remaining = loader.apply(sessionId);
+        if (remaining == null) {
+            return null;
+        }
+
+        Seats loaded = remaining == NO_LIMIT ? UNLIMITED_SEATS : new Seats(remaining);
+        if (this.generation.get() != loadedAt) {
+            return loaded;
+        }
+        Seats existing = this.seatsBySession.putIfAbsent(sessionId, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    private Reservation whenExhausted(Long sessionId, int pending, Function<Long, Long> loader) {
+        if (pending > 0) {
+            Long remaining = loader.apply(sessionId);
+            if (remaining == null || remaining > 0) {
+                return Reservation.UNCHECKED;
+            }
+        }
+        this.rejectedCount.increment();
+        return Reservation.FULL;
+    }
+
+    // Pending holds never go below zero: a hold taken before an invalidate may be settled against the reloaded count
+    private void update(Long sessionId, int seatDelta, int pendingDelta) {
+        Seats seats = this.seatsBySession.get(sessionId);
+        if (seats != null && seats != UNLIMITED_SEATS) {
+            seats.state.updateAndGet(state ->
+                    pack(remaining(state) + seatDelta, Math.max(0, pending(state) + pendingDelta)));
+        }
+    }
+
+    private static long pack(int remaining, int pending) {
+        return ((long) pending << 32) | (remaining & 0xFFFFFFFFL);
+    }
+
+    private static int remaining(long state) {
+        return (int) state;
+    }
+
+    private static int pending(long state) {
+        return (int) (state >>> 32);
+    }
+
+    private static final class Seats {
+        // Seats left in the low 32 bits, holds not yet committed or rolled back in the high 32 bits
+        private final AtomicLong state;
+
+        private Seats(long remaining) {
+            this.state = new AtomicLong(pack((int) Math.max(0, Math.min(remaining, Integer.MAX_VALUE)), 0));
+        }
+    }
+}
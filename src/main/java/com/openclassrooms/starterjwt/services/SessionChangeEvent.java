@@ -0,0 +1,37 @@
+package com.openclassrooms.starterjwt.services;
+
+/**
+ * Published by SessionService when a session or its participants change, and delivered to
+ * subscribers once the change is committed.
+ */
+public class SessionChangeEvent {
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED,
+        // A participant joined or left: the seats left changed
+        PARTICIPANTS
+    }
+
+    private final Type type;
+
+    private final Long sessionId;
+
+    public SessionChangeEvent(Type type, Long sessionId) {
+        this.type = type;
+        this.sessionId = sessionId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getSessionId() {
+        return sessionId;
+    }
+
+    // {"type":"PARTICIPANTS","sessionId":12}
+    public String toJson() {
+        return "{\"type\":\"" + type.name() + "\",\"sessionId\":" + sessionId + "}";
+    }
+}
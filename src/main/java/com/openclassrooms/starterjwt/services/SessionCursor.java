@@ -0,0 +1,51 @@
+package com.openclassrooms.starterjwt.services;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Date;
+
+import com.openclassrooms.starterjwt.models.Session;
+
+/**
+ * Position of a session in the (date, id) ordering used to paginate the session list, exchanged with
+ * clients as an opaque base64url token.
+ */
+public final class SessionCursor {
+    private final long dateMillis;
+
+    private final long id;
+
+    private SessionCursor(long dateMillis, long id) {
+        this.dateMillis = dateMillis;
+        this.id = id;
+    }
+
+    public static SessionCursor after(Session session) {
+        return new SessionCursor(session.getDate().getTime(), session.getId());
+    }
+
+    /**
+     * @throws IllegalArgumentException when the token was not produced by {@link #encode()}
+     */
+    public static SessionCursor decode(String token) {
+        byte[] bytes = Base64.getUrlDecoder().decode(token);
+        if (bytes.length != Long.BYTES * 2) {
+            throw new IllegalArgumentException("Invalid session cursor");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new SessionCursor(buffer.getLong(), buffer.getLong());
+    }
+
+    public String encode() {
+        byte[] bytes = ByteBuffer.allocate(Long.BYTES * 2).putLong(dateMillis).putLong(id).array();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    public Date getDate() {
+        return new Date(dateMillis);
+    }
+
+    public Long getId() {
+        return id;
+    }
+}
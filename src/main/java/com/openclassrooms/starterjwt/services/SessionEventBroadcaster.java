@@ -0,0 +1,201 @@
+package com.openclassrooms.starterjwt.services;
+
+import com.openclassrooms.starterjwt.exception.ServiceUnavailableException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pushes committed session changes to Server-Sent Events subscribers. Idle connections hold no
+ * thread (the servlet request is in async mode); publishing only appends the event to each
+ * subscriber's bounded queue, and a small shared pool writes the queues out. A subscriber whose
+ * queue is full is too slow to keep up and is disconnected, so one stalled client can neither
+ * block the publisher nor grow memory. Events are not replayed: a client that reconnects catches
+ * up through GET /api/session/changes.
+ */
+@Component
+public class SessionEventBroadcaster implements DisposableBean {
+    // Keeps proxies from closing idle connections, and finds the dead ones
+    private static final Event HEARTBEAT = new Event(null, null);
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    // Taken before a subscriber is added and given back when it leaves, so concurrent subscribes cannot overshoot the limit
+    private final AtomicInteger slots = new AtomicInteger();
+
+    private final ThreadPoolExecutor sender;
+
+    private final int queueCapacity;
+
+    private final int maxSubscribers;
+
+    private final long timeoutMs;
+
+    private final LongAdder evicted = new LongAdder();
+
+    public SessionEventBroadcaster(@Value("${oc.app.sessionEvents.senderThreads:4}") int senderThreads,
+                                   @Value("${oc.app.sessionEvents.queueCapacity:64}") int queueCapacity,
+                                   @Value("${oc.app.sessionEvents.maxSubscribers:10000}") int maxSubscribers,
+                                   @Value("${oc.app.sessionEvents.timeoutMs:1800000}") long timeoutMs) {
+        this.queueCapacity = queueCapacity;
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMs = timeoutMs;
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("session-events-");
+        threadFactory.setDaemon(true);
+        // At most one drain per subscriber plus one completion per removal, so the queue stays within
+        // a small multiple of maxSubscribers
+        this.sender = new ThreadPoolExecutor(senderThreads, senderThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+    }
+
+    public SseEmitter subscribe() {
+        return subscribe(new SseEmitter(this.timeoutMs));
+    }
+
+    public SseEmitter subscribe(SseEmitter emitter) {
+        if (this.slots.incrementAndGet() > this.maxSubscribers) {
+            this.slots.decrementAndGet();
+            throw new ServiceUnavailableException("Too many event subscribers, please retry later");
+        }
+
+        Subscriber subscriber = new Subscriber(emitter, this.queueCapacity);
+        this.subscribers.add(subscriber);
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+        return emitter;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onSessionChange(SessionChangeEvent change) {
+        broadcast(new Event(change.getType().name(), change.toJson()));
+    }
+
+    @Scheduled(fixedRateString = "${oc.app.sessionEvents.heartbeatMs:15000}")
+    public void heartbeat() {
+        broadcast(HEARTBEAT);
+    }
+
+    public int getSubscriberCount() {
+        return this.slots.get();
+    }
+
+    public long getEvictedCount() {
+        return this.evicted.sum();
+    }
+
+    @Override
+    public void destroy() {
+        this.sender.shutdownNow();
+        for (Subscriber subscriber : this.subscribers) {
+            if (unsubscribe(subscriber)) {
+                subscriber.emitter.complete();
+            }
+        }
+    }
+
+    private void broadcast(Event event) {
+        if (this.sender.isShutdown()) {
+            return;
+        }
+        for (Subscriber subscriber : this.subscribers) {
+            if (!subscriber.queue.offer(event)) {
+                this.evicted.increment();
+                remove(subscriber);
+                continue;
+            }
+            if (subscriber.draining.compareAndSet(false, true)) {
+                execute(() -> drain(subscriber));
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            Event event;
+            while ((event = subscriber.queue.poll()) != null) {
+                if (event == HEARTBEAT) {
+                    subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+                } else {
+                    subscriber.emitter.send(SseEmitter.event().name(event.name).data(event.data));
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Client gone, or emitter already completed
+            remove(subscriber);
+            return;
+        } finally {
+            subscriber.draining.set(false);
+        }
+
+        // An event may have been queued after the last poll but before the flag was cleared
+        if (!subscriber.queue.isEmpty() && subscriber.draining.compareAndSet(false, true)) {
+            execute(() -> drain(subscriber));
+        }
+    }
+
+    // Only the first of the callbacks, eviction and shutdown gives the slot back
+    private boolean unsubscribe(Subscriber subscriber) {
+        if (!this.subscribers.remove(subscriber)) {
+            return false;
+        }
+        this.slots.decrementAndGet();
+        return true;
+    }
+
+    private void remove(Subscriber subscriber) {
+        if (unsubscribe(subscriber)) {
+            subscriber.queue.clear();
+            // complete() waits for a send in progress, so it must not run on the publishing thread
+            execute(subscriber.emitter::complete);
+        }
+    }
+
+    // Once destroy() has shut the pool down, late heartbeats and commit events are dropped
+    private void execute(Runnable task) {
+        try {
+            this.sender.execute(task);
+        } catch (RejectedExecutionException e) {
+            // destroy() completes the remaining emitters itself
+        }
+    }
+
+    private static final class Event {
+        private final String name;
+        private final String data;
+
+        Event(String name, String data) {
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final ArrayBlockingQueue<Event> queue;
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter, int queueCapacity) {
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        }
+    }
+}
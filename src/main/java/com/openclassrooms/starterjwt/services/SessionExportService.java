@@ -0,0 +1,80 @@
+package com.openclassrooms.starterjwt.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.starterjwt.dto.SessionDto;
+import com.openclassrooms.starterjwt.mapper.SessionMapper;
+import com.openclassrooms.starterjwt.models.Session;
+import com.openclassrooms.starterjwt.repository.SessionRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Writes every session as a JSON array of SessionDto, a batch at a time: rows are read through a
+ * JPA stream, the participant ids of each batch are read in one query, and the persistence context
+ * is cleared after each batch is serialized, so memory use does not grow with the table.
+ */
+@Service
+public class SessionExportService {
+    // Sessions kept managed between two clears of the persistence context
+    private static final int BATCH_SIZE = 100;
+
+    private final SessionRepository sessionRepository;
+
+    private final SessionService sessionService;
+
+    private final SessionMapper sessionMapper;
+
+    private final ObjectMapper objectMapper;
+
+    private final EntityManager entityManager;
+
+    public SessionExportService(SessionRepository sessionRepository, SessionService sessionService,
+                                SessionMapper sessionMapper, ObjectMapper objectMapper, EntityManager entityManager) {
+        this.sessionRepository = sessionRepository;
+        this.sessionService = sessionService;
+        this.sessionMapper = sessionMapper;
+        this.objectMapper = objectMapper;
+        this.entityManager = entityManager;
+    }
+
+    @Transactional(readOnly = true)
+    public void export(OutputStream out) throws IOException {
+        JsonGenerator generator = this.objectMapper.getFactory().createGenerator(out);
+        generator.writeStartArray();
+
+        try (Stream<Session> sessions = this.sessionRepository.streamAllByOrderByDateAscIdAsc()) {
+            List<Session> batch = new ArrayList<>(BATCH_SIZE);
+            for (Iterator<Session> iterator = sessions.iterator(); iterator.hasNext(); ) {
+                batch.add(iterator.next());
+                if (batch.size() == BATCH_SIZE) {
+                    writeBatch(generator, batch);
+                }
+            }
+            writeBatch(generator, batch);
+        }
+
+        generator.writeEndArray();
+        generator.flush();
+    }
+
+    private void writeBatch(JsonGenerator generator, List<Session> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        for (SessionDto sessionDto : this.sessionMapper.toDto(batch, this.sessionService.findParticipantIds(batch))) {
+            generator.writeObject(sessionDto);
+        }
+        batch.clear();
+        this.entityManager.clear();
+    }
+}
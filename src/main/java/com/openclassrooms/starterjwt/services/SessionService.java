@@ -1,78 +1,403 @@
 package com.openclassrooms.starterjwt.services;
 
+import com.openclassrooms.starterjwt.dto.ParticipationResultDto;
 import com.openclassrooms.starterjwt.exception.BadRequestException;
 import com.openclassrooms.starterjwt.exception.NotFoundException;
 import com.openclassrooms.starterjwt.models.Session;
-import com.openclassrooms.starterjwt.models.User;
+import com.openclassrooms.starterjwt.models.SessionTombstone;
+import com.openclassrooms.starterjwt.repository.Freshness;
+import com.openclassrooms.starterjwt.repository.ParticipationBatchRepository;
 import com.openclassrooms.starterjwt.repository.SessionRepository;
+import com.openclassrooms.starterjwt.repository.SessionSpecifications;
+import com.openclassrooms.starterjwt.repository.SessionTombstoneRepository;
 import com.openclassrooms.starterjwt.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 public class SessionService {
+    // Upper bound on the number of ids sent in one IN clause
+    private static final int PARTICIPANT_QUERY_BATCH_SIZE = 1000;
+
     private final SessionRepository sessionRepository;
 
     private final UserRepository userRepository;
 
-    public SessionService(SessionRepository sessionRepository, UserRepository userRepository) {
+    private final SeatAllocator seatAllocator;
+
+    private final ParticipationBatchRepository participationBatchRepository;
+
+    private final SessionTombstoneRepository sessionTombstoneRepository;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    // Deletions older than this are forgotten; clients with an older watermark must resync in full
+    @Value("${oc.app.session.tombstoneRetentionMs:2592000000}")
+    private long tombstoneRetentionMs = 2592000000L;
+
+    public SessionService(SessionRepository sessionRepository,
+                          UserRepository userRepository,
+                          SeatAllocator seatAllocator,
+                          ParticipationBatchRepository participationBatchRepository,
+                          SessionTombstoneRepository sessionTombstoneRepository,
+                          ApplicationEventPublisher eventPublisher) {
         this.sessionRepository = sessionRepository;
         this.userRepository = userRepository;
+        this.seatAllocator = seatAllocator;
+        this.participationBatchRepository = participationBatchRepository;
+        this.sessionTombstoneRepository = sessionTombstoneRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     public Session create(Session session) {
-        return this.sessionRepository.save(session);
+        Session created = this.sessionRepository.save(session);
+        this.seatAllocator.invalidate(created.getId());
+        publish(SessionChangeEvent.Type.CREATED, created.getId());
+        return created;
     }
 
+    @Transactional
     public void delete(Long id) {
         this.sessionRepository.deleteById(id);
+        this.sessionTombstoneRepository.save(new SessionTombstone(id, LocalDateTime.now()));
+        this.seatAllocator.invalidate(id);
+        publish(SessionChangeEvent.Type.DELETED, id);
     }
 
     public List<Session> findAll() {
         return this.sessionRepository.findAll();
     }
 
+    /**
+     * Sessions ordered by date then id, starting right after the cursor (or from the first one when null).
+     * Only size + 1 rows are read, to tell whether another page follows.
+     */
+    public Slice<Session> findPage(SessionCursor after, int size) {
+        Pageable pageable = PageRequest.of(0, size);
+        if (after == null) {
+            return this.sessionRepository.findAllByOrderByDateAscIdAsc(pageable);
+        }
+        return this.sessionRepository.findPageAfter(after.getDate(), after.getId(), pageable);
+    }
+
+    /**
+     * Same as findPage, restricted to the sessions the user takes part in.
+     */
+    public Slice<Session> findParticipantPage(Long userId, SessionCursor after, int size) {
+        Pageable pageable = PageRequest.of(0, size);
+        if (after == null) {
+            return this.sessionRepository.findParticipantPage(userId, pageable);
+        }
+        return this.sessionRepository.findParticipantPageAfter(userId, after.getDate(), after.getId(), pageable);
+    }
+
+    /**
+     * Sessions matching every non-null criterion: date in [from, to), teacher and name prefix.
+     */
+    public Page<Session> search(Date from, Date to, Long teacherId, String namePrefix, Pageable pageable) {
+        List<Specification<Session>> criteria = new ArrayList<>();
+        if (from != null) {
+            criteria.add(SessionSpecifications.dateFrom(from));
+        }
+        if (to != null) {
+            criteria.add(SessionSpecifications.dateBefore(to));
+        }
+        if (teacherId != null) {
+            criteria.add(SessionSpecifications.teacherId(teacherId));
+        }
+        if (namePrefix != null && !namePrefix.isEmpty()) {
+            criteria.add(SessionSpecifications.nameStartsWith(namePrefix));
+        }
+
+        Specification<Session> specification = criteria.stream().reduce(Specification::and).orElse(null);
+        return this.sessionRepository.findAll(specification, pageable);
+    }
+
+    // Sessions created or updated at or after the given time, oldest first
+    public List<Session> findUpdatedSince(LocalDateTime since) {
+        return this.sessionRepository.findUpdatedSince(since);
+    }
+
+    public List<Long> findDeletedSince(LocalDateTime since) {
+        return this.sessionTombstoneRepository.findSessionIdsDeletedSince(since);
+    }
+
+    // False when deletions made after that time may already have been purged
+    public boolean canReportChangesSince(LocalDateTime since) {
+        return !since.isBefore(LocalDateTime.now().minus(Duration.ofMillis(this.tombstoneRetentionMs)));
+    }
+
+    @Scheduled(fixedDelayString = "${oc.app.session.tombstonePurgeIntervalMs:3600000}")
+    @Transactional
+    public void purgeTombstones() {
+        this.sessionTombstoneRepository.deleteOlderThan(LocalDateTime.now().minus(Duration.ofMillis(this.tombstoneRetentionMs)));
+    }
+
+    public Freshness getFreshness() {
+        return this.sessionRepository.findFreshness();
+    }
+
+    // Null when the session does not exist
+    public LocalDateTime getUpdatedAt(Long id) {
+        return this.sessionRepository.findUpdatedAtById(id);
+    }
+
     public Session getById(Long id) {
         return this.sessionRepository.findById(id).orElse(null);
     }
 
+    /**
+     * Same as getById, with the participants loaded as full User entities.
+     */
+    public Session getWithParticipants(Long id) {
+        return this.sessionRepository.findWithParticipantsById(id).orElse(null);
+    }
+
+    /**
+     * Ids of the participants of each session, read from the PARTICIPATE table without loading users.
+     * Sessions without participants have no entry in the returned map.
+     */
+    public Map<Long, List<Long>> findParticipantIds(List<Session> sessions) {
+        return findParticipantIdsBySessionId(sessions.stream().map(Session::getId).collect(Collectors.toList()));
+    }
+
+    public List<Long> findParticipantIds(Session session) {
+        return findParticipantIds(Collections.singletonList(session)).getOrDefault(session.getId(), Collections.emptyList());
+    }
+
+    private Map<Long, List<Long>> findParticipantIdsBySessionId(List<Long> sessionIds) {
+        Map<Long, List<Long>> participantIds = new HashMap<>();
+
+        for (int from = 0; from < sessionIds.size(); from += PARTICIPANT_QUERY_BATCH_SIZE) {
+            List<Long> batch = sessionIds.subList(from, Math.min(from + PARTICIPANT_QUERY_BATCH_SIZE, sessionIds.size()));
+            for (Object[] row : this.sessionRepository.findParticipantIds(batch)) {
+                participantIds
+                        .computeIfAbsent(((Number) row[0]).longValue(), sessionId -> new ArrayList<>())
+                        .add(((Number) row[1]).longValue());
+            }
+        }
+
+        return participantIds;
+    }
+
     public Session update(Long id, Session session) {
         session.setId(id);
-        return this.sessionRepository.save(session);
+        Session updated = this.sessionRepository.save(session);
+        // Capacity and participants may both have changed
+        this.seatAllocator.invalidate(id);
+        publish(SessionChangeEvent.Type.UPDATED, id);
+        return updated;
     }
 
+    /**
+     * Books a seat: full sessions are rejected from memory by the SeatAllocator, the others with a single
+     * conditional insert that also enforces the capacity. The existence checks only run when nothing was
+     * inserted, to tell a missing session or user from an existing participation. A held seat is given
+     * back if the transaction rolls back, whatever step failed.
+     */
+    @Transactional
     public void participate(Long id, Long userId) {
-        Session session = this.sessionRepository.findById(id).orElse(null);
-        User user = this.userRepository.findById(userId).orElse(null);
-        if (session == null || user == null) {
-            throw new NotFoundException();
+        SeatAllocator.Reservation reservation = this.seatAllocator.tryReserve(id, this.sessionRepository::findRemainingSeats);
+        if (reservation == SeatAllocator.Reservation.FULL) {
+            throw new BadRequestException("Session is full");
+        }
+        if (reservation == SeatAllocator.Reservation.RESERVED) {
+            afterCompletion(id, () -> this.seatAllocator.confirm(id), () -> this.seatAllocator.cancel(id));
         }
 
-        boolean alreadyParticipate = session.getUsers().stream().anyMatch(o -> o.getId().equals(userId));
-        if(alreadyParticipate) {
-            throw new BadRequestException();
+        if (reservation != SeatAllocator.Reservation.UNLIMITED) {
+            this.sessionRepository.lockById(id);
         }
+        insertParticipant(id, userId);
+        this.sessionRepository.touch(Collections.singleton(id), LocalDateTime.now());
+        publish(SessionChangeEvent.Type.PARTICIPANTS, id);
+    }
 
-        session.getUsers().add(user);
+    private void insertParticipant(Long id, Long userId) {
+        int inserted;
+        try {
+            inserted = this.sessionRepository.addParticipant(id, userId);
+        } catch (DataIntegrityViolationException e) {
+            // Concurrent request for the same pair, rejected by the PARTICIPATE unique key
+            throw new BadRequestException();
+        }
 
-        this.sessionRepository.save(session);
+        if (inserted == 0) {
+            if (!this.sessionRepository.existsById(id) || !this.userRepository.existsById(userId)) {
+                throw new NotFoundException();
+            }
+            throw new BadRequestException();
+        }
     }
 
+    @Transactional
     public void noLongerParticipate(Long id, Long userId) {
-        Session session = this.sessionRepository.findById(id).orElse(null);
-        if (session == null) {
-            throw new NotFoundException();
+        if (this.sessionRepository.removeParticipant(id, userId) == 0) {
+            if (!this.sessionRepository.existsById(id)) {
+                throw new NotFoundException();
+            }
+            throw new BadRequestException();
         }
+        this.sessionRepository.touch(Collections.singleton(id), LocalDateTime.now());
+        afterCompletion(id, () -> this.seatAllocator.release(id), () -> { });
+        publish(SessionChangeEvent.Type.PARTICIPANTS, id);
+    }
 
-        boolean alreadyParticipate = session.getUsers().stream().anyMatch(o -> o.getId().equals(userId));
-        if(!alreadyParticipate) {
+    /**
+     * Books every (session, user) pair of the items with one batch of conditional inserts, after locking
+     * the sessions involved, and sets the status of each item. Only the pairs that were not inserted are
+     * looked up again, to tell why.
+     */
+    @Transactional
+    public List<ParticipationResultDto> participateAll(List<ParticipationResultDto> items) {
+        if (items.isEmpty()) {
+            return items;
+        }
+
+        List<Long> sessionIds = column(items, ParticipationResultDto::getSessionId);
+        List<Long> userIds = column(items, ParticipationResultDto::getUserId);
+        Set<Long> existingSessionIds = new HashSet<>();
+        for (Number sessionId : this.sessionRepository.lockAllById(new TreeSet<>(sessionIds))) {
+            existingSessionIds.add(sessionId.longValue());
+        }
+
+        int[] inserted;
+        try {
+            inserted = this.participationBatchRepository.addAll(sessionIds, userIds);
+        } catch (DataIntegrityViolationException e) {
+            // Concurrent request for one of the pairs, rejected by the PARTICIPATE unique key
             throw new BadRequestException();
         }
 
-        session.setUsers(session.getUsers().stream().filter(user -> !user.getId().equals(userId)).collect(Collectors.toList()));
+        List<Integer> failed = new ArrayList<>();
+        Set<Long> changedSessionIds = new HashSet<>();
+        for (int i = 0; i < items.size(); i++) {
+            if (inserted[i] > 0) {
+                items.get(i).setStatus(ParticipationResultDto.Status.ADDED);
+                changedSessionIds.add(sessionIds.get(i));
+            } else {
+                failed.add(i);
+            }
+        }
+        if (!changedSessionIds.isEmpty()) {
+            this.sessionRepository.touch(changedSessionIds, LocalDateTime.now());
+            changedSessionIds.forEach(sessionId -> publish(SessionChangeEvent.Type.PARTICIPANTS, sessionId));
+        }
+
+        if (!failed.isEmpty()) {
+            Set<Long> existingUserIds = new HashSet<>(this.userRepository.findExistingIds(
+                    failed.stream().map(userIds::get).collect(Collectors.toSet())));
+            Map<Long, List<Long>> participantIds = findParticipantIdsBySessionId(
+                    failed.stream().map(sessionIds::get).distinct().collect(Collectors.toList()));
+            for (int i : failed) {
+                ParticipationResultDto item = items.get(i);
+                if (!existingSessionIds.contains(item.getSessionId()) || !existingUserIds.contains(item.getUserId())) {
+                    item.setStatus(ParticipationResultDto.Status.NOT_FOUND);
+                } else if (participantIds.getOrDefault(item.getSessionId(), Collections.emptyList()).contains(item.getUserId())) {
+                    item.setStatus(ParticipationResultDto.Status.ALREADY_PARTICIPATING);
+                } else {
+                    item.setStatus(ParticipationResultDto.Status.SESSION_FULL);
+                }
+            }
+        }
+
+        // The seats were taken without going through the allocator
+        existingSessionIds.forEach(this.seatAllocator::invalidate);
+        return items;
+    }
+
+    /**
+     * Removes every (session, user) pair of the items with one batch of deletes and sets the status of each item.
+     */
+    @Transactional
+    public List<ParticipationResultDto> noLongerParticipateAll(List<ParticipationResultDto> items) {
+        if (items.isEmpty()) {
+            return items;
+        }
+
+        List<Long> sessionIds = column(items, ParticipationResultDto::getSessionId);
+        int[] removed = this.participationBatchRepository.removeAll(sessionIds, column(items, ParticipationResultDto::getUserId));
+
+        Set<Long> failedSessionIds = new HashSet<>();
+        Set<Long> changedSessionIds = new HashSet<>();
+        for (int i = 0; i < items.size(); i++) {
+            if (removed[i] > 0) {
+                items.get(i).setStatus(ParticipationResultDto.Status.REMOVED);
+                Long sessionId = sessionIds.get(i);
+                changedSessionIds.add(sessionId);
+                afterCompletion(sessionId, () -> this.seatAllocator.release(sessionId), () -> { });
+            } else {
+                failedSessionIds.add(sessionIds.get(i));
+            }
+        }
+        if (!changedSessionIds.isEmpty()) {
+            this.sessionRepository.touch(changedSessionIds, LocalDateTime.now());
+            changedSessionIds.forEach(sessionId -> publish(SessionChangeEvent.Type.PARTICIPANTS, sessionId));
+        }
+
+        if (!failedSessionIds.isEmpty()) {
+            Set<Long> existingSessionIds = new HashSet<>(this.sessionRepository.findExistingIds(failedSessionIds));
+            for (int i = 0; i < items.size(); i++) {
+                if (removed[i] <= 0) {
+                    items.get(i).setStatus(existingSessionIds.contains(sessionIds.get(i))
+                            ? ParticipationResultDto.Status.NOT_PARTICIPATING
+                            : ParticipationResultDto.Status.NOT_FOUND);
+                }
+            }
+        }
+        return items;
+    }
+
+    // Delivered to SessionEventBroadcaster after the surrounding transaction commits
+    private void publish(SessionChangeEvent.Type type, Long sessionId) {
+        this.eventPublisher.publishEvent(new SessionChangeEvent(type, sessionId));
+    }
+
+    /**
+     * Settles the seat counts once the outcome of the surrounding transaction is known, so that they never
+     * reflect a booking or cancellation that was rolled back. The count is reloaded when the outcome is unknown.
+     */
+    private void afterCompletion(Long sessionId, Runnable onCommit, Runnable onRollback) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    onCommit.run();
+                } else if (status == STATUS_ROLLED_BACK) {
+                    onRollback.run();
+                } else {
+                    SessionService.this.seatAllocator.invalidate(sessionId);
+                }
+            }
+        });
+    }
 
-        this.sessionRepository.save(session);
+    private static List<Long> column(List<ParticipationResultDto> items, Function<ParticipationResultDto, Long> getter) {
+        return items.stream().map(getter).collect(Collectors.toList());
     }
 }
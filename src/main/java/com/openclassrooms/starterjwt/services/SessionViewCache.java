@@ -0,0 +1,117 @@
+package com.openclassrooms.starterjwt.services;
+
+import com.openclassrooms.starterjwt.cache.ExpiringCache;
+import com.openclassrooms.starterjwt.dto.SessionView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of mapped sessions by id, for GET /api/session/{id}. Entries are dropped when
+ * the SessionChangeEvent of their session is committed; the TTL only bounds changes made outside
+ * SessionService.
+ */
+@Component
+public class SessionViewCache {
+    private static final Logger logger = LoggerFactory.getLogger(SessionViewCache.class);
+
+    private final ExpiringCache<Long, SessionView> cache;
+
+    // Bumped on every invalidation, so that a view loaded while a change was committing is not stored
+    private final AtomicLong generation = new AtomicLong();
+
+    // Counts reported by the previous summary
+    private long loggedHits;
+    private long loggedMisses;
+    private long loggedEvictions;
+
+    public SessionViewCache(@Value("${oc.app.sessionViewCache.maxSize:10000}") int maxSize,
+                            @Value("${oc.app.sessionViewCache.ttlMs:600000}") long ttlMs) {
+        this.cache = new ExpiringCache<>(maxSize, ttlMs);
+    }
+
+    /**
+     * @param loader builds the view from the database, or returns null when the session does not exist
+     */
+    public SessionView get(Long id, Function<Long, SessionView> loader) {
+        SessionView view = getIfPresent(id);
+        return view != null ? view : load(id, loader);
+    }
+
+    // Null on a miss, nothing is loaded
+    public SessionView getIfPresent(Long id) {
+        return this.cache.get(id);
+    }
+
+    /**
+     * Builds the view and stores it, without looking the cache up first: for callers who already missed
+     * with getIfPresent.
+     */
+    public SessionView load(Long id, Function<Long, SessionView> loader) {
+        long loadedAt = this.generation.get();
+        SessionView view = loader.apply(id);
+        if (view != null && this.generation.get() == loadedAt) {
+            this.cache.put(id, view);
+        }
+        return view;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onSessionChange(SessionChangeEvent change) {
+        this.generation.incrementAndGet();
+        this.cache.invalidate(change.getSessionId());
+    }
+
+    public void clear() {
+        this.generation.incrementAndGet();
+        this.cache.clear();
+    }
+
+    public int size() {
+        return this.cache.size();
+    }
+
+    public long getHitCount() {
+        return this.cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return this.cache.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return this.cache.getEvictionCount();
+    }
+
+    public double getHitRatio() {
+        return this.cache.getHitRatio();
+    }
+
+    /**
+     * Logs the hit ratio and evictions of the interval, to tell whether maxSize and the TTL suit the
+     * traffic. Nothing is logged when no session was read.
+     */
+    @Scheduled(fixedRateString = "${oc.app.sessionViewCache.metricsLogIntervalMs:60000}")
+    public synchronized void logMetrics() {
+        long hits = this.cache.getHitCount();
+        long misses = this.cache.getMissCount();
+        long evictions = this.cache.getEvictionCount();
+        long lookups = (hits - this.loggedHits) + (misses - this.loggedMisses);
+        if (lookups == 0) {
+            return;
+        }
+
+        logger.info("Session view cache since last summary: lookups={}, hitRatio={}%, evictions={}, size={}",
+                lookups, (hits - this.loggedHits) * 100 / lookups, evictions - this.loggedEvictions, this.cache.size());
+        this.loggedHits = hits;
+        this.loggedMisses = misses;
+        this.loggedEvictions = evictions;
+    }
+}
@@ -1,24 +1,174 @@
 package com.openclassrooms.starterjwt.services;
 
 import com.openclassrooms.starterjwt.models.Teacher;
+import com.openclassrooms.starterjwt.repository.Freshness;
 import com.openclassrooms.starterjwt.repository.TeacherRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Serves the teachers from an in-memory catalog loaded at startup. The table is small and nearly
+ * static, so reads never touch the database; the catalog is replaced as a whole when the table
+ * changes. The catalog keeps its own copies and hands out fresh ones, so a caller modifying a
+ * returned teacher cannot affect the others.
+ */
 @Service
 public class TeacherService {
+    private static final Logger logger = LoggerFactory.getLogger(TeacherService.class);
+
     private final TeacherRepository teacherRepository;
 
+    private final AtomicReference<Catalog> catalog = new AtomicReference<>();
+
     public TeacherService(TeacherRepository teacherRepository) {
         this.teacherRepository = teacherRepository;
     }
 
     public List<Teacher> findAll() {
-        return this.teacherRepository.findAll();
+        List<Teacher> teachers = catalog().teachers;
+        List<Teacher> copies = new ArrayList<>(teachers.size());
+        for (Teacher teacher : teachers) {
+            copies.add(copy(teacher));
+        }
+        return copies;
     }
 
     public Teacher findById(Long id) {
-        return this.teacherRepository.findById(id).orElse(null);
+        Teacher teacher = id != null ? catalog().teachersById.get(id) : null;
+        return teacher != null ? copy(teacher) : null;
+    }
+
+    /**
+     * Like findById, but a teacher missing from the catalog is looked up in the database, in case it
+     * was inserted since the last refresh, and added to the catalog when found.
+     */
+    public Teacher findOrLoad(Long id) {
+        Teacher teacher = findById(id);
+        if (teacher != null || id == null) {
+            return teacher;
+        }
+
+        Teacher loaded = this.teacherRepository.findById(id).orElse(null);
+        if (loaded == null) {
+            return null;
+        }
+        this.catalog.updateAndGet(current -> current.with(loaded));
+        return copy(loaded);
+    }
+
+    public Freshness getFreshness() {
+        return catalog();
+    }
+
+    // Null when the teacher does not exist
+    public LocalDateTime getUpdatedAt(Long id) {
+        Teacher teacher = id != null ? catalog().teachersById.get(id) : null;
+        return teacher != null ? teacher.getUpdatedAt() : null;
+    }
+
+    /**
+     * Loads the whole table into a new catalog, whether or not it looks changed. Also used on demand
+     * through POST /api/teacher/refresh (admins only), for out-of-band edits that did not bump updated_at.
+     */
+    @PostConstruct
+    public void reload() {
+        Catalog loaded = new Catalog(this.teacherRepository.findAll());
+        this.catalog.set(loaded);
+        logger.info("Loaded {} teachers", loaded.teachers.size());
+    }
+
+    /**
+     * Reloads the catalog when rows were added, removed or edited since the last load, including
+     * changes made directly in the database. Only the count and last update are read otherwise.
+     */
+    @Scheduled(fixedDelayString = "${oc.app.teacherCatalog.refreshIntervalMs:60000}",
+            initialDelayString = "${oc.app.teacherCatalog.refreshIntervalMs:60000}")
+    public void refresh() {
+        Catalog current = this.catalog.get();
+        Freshness freshness = this.teacherRepository.findFreshness();
+        if (current != null && freshness != null && current.matches(freshness)) {
+            return;
+        }
+        reload();
+    }
+
+    private Catalog catalog() {
+        Catalog current = this.catalog.get();
+        if (current == null) {
+            reload();
+            current = this.catalog.get();
+        }
+        return current;
+    }
+
+    private static Teacher copy(Teacher teacher) {
+        return Teacher.builder()
+                .id(teacher.getId())
+                .lastName(teacher.getLastName())
+                .firstName(teacher.getFirstName())
+                .createdAt(teacher.getCreatedAt())
+                .updatedAt(teacher.getUpdatedAt())
+                .build();
+    }
+
+    private static final class Catalog implements Freshness {
+        private final List<Teacher> teachers;
+        private final Map<Long, Teacher> teachersById;
+        private final LocalDateTime lastUpdated;
+
+        private Catalog(List<Teacher> teachers) {
+            Map<Long, Teacher> byId = new HashMap<>();
+            LocalDateTime latest = null;
+            List<Teacher> copies = new ArrayList<>(teachers.size());
+            for (Teacher loaded : teachers) {
+                Teacher teacher = copy(loaded);
+                copies.add(teacher);
+                byId.put(teacher.getId(), teacher);
+                if (teacher.getUpdatedAt() != null && (latest == null || teacher.getUpdatedAt().isAfter(latest))) {
+                    latest = teacher.getUpdatedAt();
+                }
+            }
+            this.teachers = Collections.unmodifiableList(copies);
+            this.teachersById = Collections.unmodifiableMap(byId);
+            this.lastUpdated = latest;
+        }
+
+        // Same catalog with the teacher added, or replaced when already present
+        private Catalog with(Teacher teacher) {
+            List<Teacher> updated = new ArrayList<>(teachers.size() + 1);
+            for (Teacher existing : teachers) {
+                if (!existing.getId().equals(teacher.getId())) {
+                    updated.add(existing);
+                }
+            }
+            updated.add(teacher);
+            return new Catalog(updated);
+        }
+
+        @Override
+        public long getCount() {
+            return teachers.size();
+        }
+
+        @Override
+        public LocalDateTime getLastUpdated() {
+            return lastUpdated;
+        }
+
+        private boolean matches(Freshness freshness) {
+            return freshness.getCount() == getCount() && Objects.equals(freshness.getLastUpdated(), lastUpdated);
+        }
     }
 }
@@ -2,21 +2,46 @@ package com.openclassrooms.starterjwt.services;
 
 import com.openclassrooms.starterjwt.models.User;
 import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.security.jwt.TokenRevocationStore;
+import com.openclassrooms.starterjwt.security.services.PrincipalCache;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
 @Service
 public class UserService {
     private final UserRepository userRepository;
 
-    public UserService(UserRepository userRepository) {
+    private final PrincipalCache principalCache;
+
+    private final TokenRevocationStore revocationStore;
+
+    public UserService(UserRepository userRepository, PrincipalCache principalCache,
+            TokenRevocationStore revocationStore) {
         this.userRepository = userRepository;
+        this.principalCache = principalCache;
+        this.revocationStore = revocationStore;
     }
 
     public void delete(Long id) {
         this.userRepository.deleteById(id);
+        this.principalCache.evictUserId(id);
+        // Tokens already issued to the deleted user stop authenticating immediately
+        this.revocationStore.revokeUser(id);
+    }
+
+    // Null when the user does not exist
+    public LocalDateTime getUpdatedAt(Long id) {
+        return this.userRepository.findUpdatedAtById(id);
     }
 
     public User findById(Long id) {
         return this.userRepository.findById(id).orElse(null);
     }
+
+    public List<User> findAllById(Collection<Long> ids) {
+        return this.userRepository.findAllById(ids);
+    }
 }
@@ -0,0 +1,70 @@
+package com.openclassrooms.starterjwt.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpiringCacheTest {
+
+    @Test
+    void get_ShouldReturnValue_WhenEntryIsFresh() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(10, 60000);
+
+        cache.put("a", "value");
+
+        // Une entrée récente est servie depuis le cache et comptée comme hit
+        assertEquals("value", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRatio());
+    }
+
+    @Test
+    void get_ShouldReturnNull_WhenEntryIsExpired() throws InterruptedException {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(10, 1);
+
+        cache.put("a", "value");
+        Thread.sleep(5);
+
+        // L'entrée expirée est retirée et comptée comme éviction
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    void put_ShouldNeverExceedMaxSize() {
+        ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(100, 60000);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, i);
+        }
+
+        // La taille reste bornée, les entrées en trop sont évincées
+        assertEquals(100, cache.size());
+        assertEquals(900, cache.getEvictionCount());
+    }
+
+    @Test
+    void invalidateIf_ShouldRemoveMatchingEntries() {
+        ExpiringCache<String, Long> cache = new ExpiringCache<>(10, 60000);
+        cache.put("a", 1L);
+        cache.put("b", 2L);
+
+        cache.invalidateIf((key, value) -> value == 1L);
+
+        assertNull(cache.get("a"));
+        assertEquals(2L, cache.get("b"));
+    }
+
+    @Test
+    void put_ShouldBeIgnored_WhenCacheIsDisabled() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(0, 60000);
+
+        cache.put("a", "value");
+
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get("a"));
+    }
+}
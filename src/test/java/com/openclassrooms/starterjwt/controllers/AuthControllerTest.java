@@ -3,11 +3,16 @@ package com.openclassrooms.starterjwt.controllers;
 import com.openclassrooms.starterjwt.models.User;
 import com.openclassrooms.starterjwt.payload.request.LoginRequest;
 import com.openclassrooms.starterjwt.payload.request.SignupRequest;
+import com.openclassrooms.starterjwt.payload.request.TokenRefreshRequest;
 import com.openclassrooms.starterjwt.payload.response.JwtResponse;
 import com.openclassrooms.starterjwt.payload.response.MessageResponse;
+import com.openclassrooms.starterjwt.payload.response.TokenRefreshResponse;
 import com.openclassrooms.starterjwt.repository.UserRepository;
 import com.openclassrooms.starterjwt.security.jwt.JwtUtils;
 import com.openclassrooms.starterjwt.security.services.UserDetailsImpl;
+import com.openclassrooms.starterjwt.security.services.UserDetailsServiceImpl;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -19,14 +24,14 @@ import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
-import java.util.Optional;
-
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 // Intégration de Mockito avec JUnit 5
@@ -45,6 +50,9 @@ class AuthControllerTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private UserDetailsServiceImpl userDetailsService;
+
     // Contrôleur testé avec injection des mocks
     @InjectMocks
     private AuthController authController;
@@ -84,6 +92,7 @@ class AuthControllerTest {
                 .username("test@test.com")
                 .firstName("Test")
                 .lastName("User")
+                .admin(false)
                 .password("password")
                 .build();
     }
@@ -99,7 +108,7 @@ class AuthControllerTest {
                 .willReturn(authentication);
         given(authentication.getPrincipal()).willReturn(userDetails);
         given(jwtUtils.generateJwtToken(authentication)).willReturn("jwtToken");
-        given(userRepository.findByEmail("test@test.com")).willReturn(Optional.of(user));
+        given(jwtUtils.generateRefreshToken(userDetails)).willReturn("refreshToken");
 
         // Act :Appel réel de la méthode testée : authenticateUser
         ResponseEntity<?> response = authController.authenticateUser(loginRequest);
@@ -115,11 +124,41 @@ class AuthControllerTest {
         assertThat(jwtResponse.getFirstName()).isEqualTo("Test");
         assertThat(jwtResponse.getLastName()).isEqualTo("User");
         assertThat(jwtResponse.getAdmin()).isFalse();
+        assertThat(jwtResponse.getRefreshToken()).isEqualTo("refreshToken");
 
         // Vérification moins stricte du contexte de sécurité
         Authentication contextAuth = SecurityContextHolder.getContext().getAuthentication();
         assertThat(contextAuth).isNotNull();
         assertThat(contextAuth.getPrincipal()).isEqualTo(userDetails);
+
+        // Le profil vient du principal authentifié : aucune seconde requête utilisateur
+        verify(userRepository, never()).findByEmail(any());
+    }
+
+    @Test
+    void authenticateUser_WithAdminPrincipal_ShouldReturnAdminFlag() {
+        // Arrange : principal administrateur chargé par UserDetailsServiceImpl
+        UserDetailsImpl adminDetails = UserDetailsImpl.builder()
+                .id(2L)
+                .username("admin@test.com")
+                .firstName("Admin")
+                .lastName("User")
+                .admin(true)
+                .password("password")
+                .build();
+        Authentication authentication = mock(Authentication.class);
+        given(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
+                .willReturn(authentication);
+        given(authentication.getPrincipal()).willReturn(adminDetails);
+        given(jwtUtils.generateJwtToken(authentication)).willReturn("jwtToken");
+
+        // Act
+        ResponseEntity<?> response = authController.authenticateUser(loginRequest);
+
+        // Assert
+        JwtResponse jwtResponse = (JwtResponse) response.getBody();
+        assertThat(jwtResponse.getAdmin()).isTrue();
+        verify(userRepository, never()).findByEmail(any());
     }
 
     @Test
@@ -165,4 +204,98 @@ class AuthControllerTest {
             assertThat(e.getMessage()).isEqualTo("Bad credentials");
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void refreshToken_WithValidRefreshToken_ShouldReturnNewAccessToken() {
+        // Arrange : refresh token signé et utilisateur toujours présent
+        TokenRefreshRequest refreshRequest = new TokenRefreshRequest();
+        refreshRequest.setRefreshToken("refreshToken");
+        Claims claims = Jwts.claims().setSubject("test@test.com");
+
+        given(jwtUtils.parseVerifiedClaims("refreshToken")).willReturn(claims);
+        given(jwtUtils.isRefreshToken(claims)).willReturn(true);
+        given(userDetailsService.loadUserByUsername("test@test.com")).willReturn(userDetails);
+        given(jwtUtils.generateAccessToken(userDetails)).willReturn("newJwtToken");
+
+        // Act
+        ResponseEntity<?> response = authController.refreshToken(refreshRequest);
+
+        // Assert : nouveau token d'accès, sans repasser par l'AuthenticationManager
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        TokenRefreshResponse body = (TokenRefreshResponse) response.getBody();
+        assertThat(body.getToken()).isEqualTo("newJwtToken");
+        assertThat(body.getRefreshToken()).isEqualTo("refreshToken");
+        verify(authenticationManager, never()).authenticate(any());
+    }
+
+    @Test
+    void refreshToken_WithAccessToken_ShouldReturnUnauthorized() {
+        // Arrange : un token d'accès ne peut pas servir de refresh token
+        TokenRefreshRequest refreshRequest = new TokenRefreshRequest();
+        refreshRequest.setRefreshToken("jwtToken");
+        Claims claims = Jwts.claims().setSubject("test@test.com");
+
+        given(jwtUtils.parseVerifiedClaims("jwtToken")).willReturn(claims);
+        given(jwtUtils.isRefreshToken(claims)).willReturn(false);
+
+        // Act & Assert
+        ResponseEntity<?> response = authController.refreshToken(refreshRequest);
+        assertThat(response.getStatusCodeValue()).isEqualTo(401);
+    }
+
+    @Test
+    void refreshToken_WhenUserWasDeleted_ShouldReturnUnauthorized() {
+        // Arrange : refresh token valide mais utilisateur supprimé
+        TokenRefreshRequest refreshRequest = new TokenRefreshRequest();
+        refreshRequest.setRefreshToken("refreshToken");
+        Claims claims = Jwts.claims().setSubject("test@test.com");
+
+        given(jwtUtils.parseVerifiedClaims("refreshToken")).willReturn(claims);
+        given(jwtUtils.isRefreshToken(claims)).willReturn(true);
+        given(userDetailsService.loadUserByUsername("test@test.com"))
+                .willThrow(new UsernameNotFoundException("User Not Found with email: test@test.com"));
+
+        // Act & Assert
+        ResponseEntity<?> response = authController.refreshToken(refreshRequest);
+        assertThat(response.getStatusCodeValue()).isEqualTo(401);
+        assertThat(((MessageResponse) response.getBody()).getMessage())
+                .isEqualTo("Error: Refresh token is invalid or expired!");
+    }
+
+    @Test
+    void refreshToken_WhenRevoked_ShouldReturnUnauthorized() {
+        // Arrange : refresh token révoqué lors d'une déconnexion
+        TokenRefreshRequest refreshRequest = new TokenRefreshRequest();
+        refreshRequest.setRefreshToken("refreshToken");
+        Claims claims = Jwts.claims().setSubject("test@test.com");
+
+        given(jwtUtils.parseVerifiedClaims("refreshToken")).willReturn(claims);
+        given(jwtUtils.isRefreshToken(claims)).willReturn(true);
+        given(jwtUtils.isRevoked(claims)).willReturn(true);
+
+        // Act & Assert : aucun nouveau token n'est émis
+        ResponseEntity<?> response = authController.refreshToken(refreshRequest);
+        assertThat(response.getStatusCodeValue()).isEqualTo(401);
+        verify(userDetailsService, never()).loadUserByUsername(any());
+    }
+
+    @Test
+    void logout_ShouldRevokeAccessAndRefreshTokens() {
+        // Arrange : token d'accès dans l'en-tête et refresh token dans le corps
+        TokenRefreshRequest refreshRequest = new TokenRefreshRequest();
+        refreshRequest.setRefreshToken("refreshToken");
+        Claims accessClaims = Jwts.claims().setId("a1");
+        Claims refreshClaims = Jwts.claims().setId("b2");
+
+        given(jwtUtils.parseVerifiedClaims("jwtToken")).willReturn(accessClaims);
+        given(jwtUtils.parseVerifiedClaims("refreshToken")).willReturn(refreshClaims);
+
+        // Act
+        ResponseEntity<?> response = authController.logout("Bearer jwtToken", refreshRequest);
+
+        // Assert : les deux tokens sont révoqués
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        verify(jwtUtils).revoke(accessClaims);
+        verify(jwtUtils).revoke(refreshClaims);
+    }
+}
@@ -0,0 +1,46 @@
+package com.openclassrooms.starterjwt.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConditionalGetTest {
+
+    private static final LocalDateTime FIRST_CHANGE = LocalDateTime.of(2024, 5, 6, 10, 0, 0, 100_000);
+
+    // Même seconde, 100 microsecondes plus tard
+    private static final LocalDateTime SECOND_CHANGE = LocalDateTime.of(2024, 5, 6, 10, 0, 0, 200_000);
+
+    @Test
+    void isNotModified_WhenChangedWithinTheSameSecond_ShouldAnswerWithNewBody() {
+        String etag = etagFor(FIRST_CHANGE);
+
+        // Le client revient avec l'ETag de la première version, après un second changement dans la même seconde
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/session/1");
+        request.addHeader("If-None-Match", etag);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertThat(ConditionalGet.isNotModified(new ServletWebRequest(request, response), "1", SECOND_CHANGE)).isFalse();
+        assertThat(response.getHeader("ETag")).isNotEqualTo(etag);
+    }
+
+    @Test
+    void isNotModified_WhenUnchanged_ShouldAnswerNotModified() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/session/1");
+        request.addHeader("If-None-Match", etagFor(SECOND_CHANGE));
+
+        assertThat(ConditionalGet.isNotModified(new ServletWebRequest(request, new MockHttpServletResponse()), "1",
+                SECOND_CHANGE)).isTrue();
+    }
+
+    private static String etagFor(LocalDateTime updatedAt) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ConditionalGet.isNotModified(new ServletWebRequest(new MockHttpServletRequest("GET", "/"), response), "1", updatedAt);
+        return response.getHeader("ETag");
+    }
+}
@@ -1,21 +1,49 @@
 package com.openclassrooms.starterjwt.controllers;
 
+import com.openclassrooms.starterjwt.dto.ParticipationResultDto;
+import com.openclassrooms.starterjwt.dto.SessionChangesDto;
 import com.openclassrooms.starterjwt.dto.SessionDto;
+import com.openclassrooms.starterjwt.dto.SessionPageDto;
+import com.openclassrooms.starterjwt.dto.SessionSearchDto;
+import com.openclassrooms.starterjwt.dto.SessionView;
 import com.openclassrooms.starterjwt.mapper.SessionMapper;
 import com.openclassrooms.starterjwt.models.Session;
+import com.openclassrooms.starterjwt.payload.request.BulkParticipationRequest;
+import com.openclassrooms.starterjwt.repository.Freshness;
+import com.openclassrooms.starterjwt.security.services.UserDetailsImpl;
+import com.openclassrooms.starterjwt.services.SessionCursor;
+import com.openclassrooms.starterjwt.services.SessionEventBroadcaster;
+import com.openclassrooms.starterjwt.services.SessionExportService;
 import com.openclassrooms.starterjwt.services.SessionService;
+import com.openclassrooms.starterjwt.services.SessionViewCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.ResponseEntity;
-
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.*;
@@ -30,9 +58,21 @@ class SessionControllerTest {
     @Mock
     private SessionMapper sessionMapper;// Mapper mocké
 
+    @Mock
+    private SessionExportService sessionExportService;// Export en streaming mocké
+
+    @Mock
+    private SessionEventBroadcaster sessionEventBroadcaster;// Diffusion SSE mockée
+
+    @Spy
+    private SessionViewCache sessionViewCache = new SessionViewCache(100, 60000);// Vrai cache, vide à chaque test
+
     @InjectMocks
     private SessionController sessionController;// Contrôleur testé avec mocks injectés
 
+    // Requête sans en-têtes conditionnels
+    private final WebRequest webRequest = new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse());
+
     private Session session;
     private SessionDto sessionDto;
 
@@ -55,14 +95,45 @@ class SessionControllerTest {
     void findById_WhenSessionExists_ShouldReturnSessionDto() {
         // Simule un retour valide du service et du mapper
         given(sessionService.getById(1L)).willReturn(session);
-        given(sessionMapper.toDto(session)).willReturn(sessionDto);
+        given(sessionService.findParticipantIds(session)).willReturn(Arrays.asList(10L, 20L));
+        given(sessionMapper.toDto(session, Arrays.asList(10L, 20L))).willReturn(sessionDto);
 
         // Appel du contrôleur
-        ResponseEntity<?> response = sessionController.findById("1");
+        ResponseEntity<?> response = sessionController.findById("1", webRequest);
 
         // Vérifie que la réponse est correcte
         assertThat(response.getStatusCodeValue()).isEqualTo(200);
-        assertThat(response.getBody()).isEqualTo(sessionDto);
+        SessionView view = (SessionView) response.getBody();
+        assertThat(view.getId()).isEqualTo(1L);
+        assertThat(view.getName()).isEqualTo("Test Session");
+    }
+
+    @Test
+    void findById_WhenCalledTwice_ShouldServeSecondCallFromCache() {
+        given(sessionService.getById(1L)).willReturn(session);
+        given(sessionService.findParticipantIds(session)).willReturn(Arrays.asList(10L));
+        given(sessionMapper.toDto(session, Arrays.asList(10L))).willReturn(sessionDto);
+
+        sessionController.findById("1", webRequest);
+        ResponseEntity<?> response = sessionController.findById("1", webRequest);
+
+        // Le second appel ne relit ni la session ni les participants
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        verify(sessionService, times(1)).getById(1L);
+        verify(sessionService, times(1)).findParticipantIds(session);
+        assertThat(sessionViewCache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void findById_WhenSessionNotExists_ShouldNotCacheTheMiss() {
+        given(sessionService.getById(1L)).willReturn(null);
+
+        sessionController.findById("1", webRequest);
+        sessionController.findById("1", webRequest);
+
+        // Une session absente est relue à chaque appel, pour voir sa création
+        verify(sessionService, times(2)).getById(1L);
+        assertThat(sessionViewCache.size()).isZero();
     }
 
     @Test
@@ -70,7 +141,7 @@ class SessionControllerTest {
         // Simule une session non trouvée
         given(sessionService.getById(anyLong())).willReturn(null);
 
-        ResponseEntity<?> response = sessionController.findById("1");
+        ResponseEntity<?> response = sessionController.findById("1", webRequest);
         // Vérifie que la réponse est 404
         assertThat(response.getStatusCodeValue()).isEqualTo(404);
     }
@@ -78,7 +149,7 @@ class SessionControllerTest {
     @Test
     void findById_WhenInvalidId_ShouldReturnBadRequest() {
         // Teste un identifiant invalide (non numérique)
-        ResponseEntity<?> response = sessionController.findById("invalid");
+        ResponseEntity<?> response = sessionController.findById("invalid", webRequest);
 
         // Vérifie que la réponse est 400
         assertThat(response.getStatusCodeValue()).isEqualTo(400);
@@ -92,15 +163,71 @@ class SessionControllerTest {
         List<SessionDto> sessionDtos = Arrays.asList(sessionDto);
 
         given(sessionService.findAll()).willReturn(sessions);
-        given(sessionMapper.toDto(sessions)).willReturn(sessionDtos);
+        given(sessionService.findParticipantIds(sessions)).willReturn(Collections.singletonMap(1L, Arrays.asList(10L)));
+        given(sessionMapper.toDto(sessions, Collections.singletonMap(1L, Arrays.asList(10L)))).willReturn(sessionDtos);
 
-        ResponseEntity<?> response = sessionController.findAll();
+        ResponseEntity<?> response = sessionController.findAll(null, null, webRequest);
 
         // Vérifie que la réponse contient bien la liste
         assertThat(response.getStatusCodeValue()).isEqualTo(200);
         assertThat(response.getBody()).isEqualTo(sessionDtos);
     }
 
+    @Test
+    void findAll_WithPageSize_ShouldReturnPageWithNextCursor() {
+        // Simule une page pleine suivie d'autres sessions
+        session.setDate(new Date(1700000000000L));
+        List<Session> sessions = Arrays.asList(session);
+        List<SessionDto> sessionDtos = Arrays.asList(sessionDto);
+        given(sessionService.findPage(null, 1)).willReturn(new SliceImpl<>(sessions, PageRequest.of(0, 1), true));
+        given(sessionService.findParticipantIds(sessions)).willReturn(Collections.emptyMap());
+        given(sessionMapper.toDto(sessions, Collections.emptyMap())).willReturn(sessionDtos);
+
+        ResponseEntity<?> response = sessionController.findAll(null, "1", webRequest);
+
+        // Le curseur suivant désigne la dernière session de la page
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        SessionPageDto page = (SessionPageDto) response.getBody();
+        assertThat(page.getItems()).isEqualTo(sessionDtos);
+        SessionCursor next = SessionCursor.decode(page.getNextCursor());
+        assertThat(next.getId()).isEqualTo(1L);
+        assertThat(next.getDate()).isEqualTo(new Date(1700000000000L));
+        verify(sessionService, never()).findAll();
+    }
+
+    @Test
+    void findAll_WithLargePageSize_ShouldCapPageSize() {
+        given(sessionService.findPage(null, 100)).willReturn(new SliceImpl<>(Arrays.asList(), PageRequest.of(0, 100), false));
+
+        ResponseEntity<?> response = sessionController.findAll(null, "5000", webRequest);
+
+        // La taille demandée est plafonnée et la dernière page n'a pas de curseur
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        assertThat(((SessionPageDto) response.getBody()).getNextCursor()).isNull();
+    }
+
+    @Test
+    void findAll_WithInvalidCursorOrSize_ShouldReturnBadRequest() {
+        // Curseur illisible, taille non numérique ou nulle
+        assertThat(sessionController.findAll("not-a-cursor!", null, webRequest).getStatusCodeValue()).isEqualTo(400);
+        assertThat(sessionController.findAll(null, "abc", webRequest).getStatusCodeValue()).isEqualTo(400);
+        assertThat(sessionController.findAll(null, "0", webRequest).getStatusCodeValue()).isEqualTo(400);
+        verify(sessionService, never()).findPage(any(), anyInt());
+    }
+
+    // ---------- Tests du endpoint export ----------
+    @Test
+    void export_ShouldStreamSessionsToResponse() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        sessionController.export(response);
+
+        // Le service écrit directement dans le flux de la réponse, sans passer par une liste
+        assertThat(response.getContentType()).isEqualTo("application/json");
+        verify(sessionExportService).export(response.getOutputStream());
+        verify(sessionService, never()).findAll();
+    }
+
     // ---------- Tests du endpoint create ----------
     @Test
     void create_WithValidSessionDto_ShouldReturnCreatedSession() {
@@ -201,4 +328,258 @@ class SessionControllerTest {
 
         assertThat(response.getStatusCodeValue()).isEqualTo(400);
     }
-}
\ No newline at end of file
+
+    // ---------- Tests du endpoint participateAll ----------
+    @Test
+    void participateAll_WithOneSessionAndManyUsers_ShouldReturnStatuses() {
+        // Inscription de trois utilisateurs à la session 1
+        BulkParticipationRequest request = new BulkParticipationRequest();
+        request.setAction(BulkParticipationRequest.Action.ADD);
+        request.setSessionId(1L);
+        request.setUserIds(Arrays.asList(2L, 3L, 4L));
+        List<ParticipationResultDto> results = Arrays.asList(
+                new ParticipationResultDto(1L, 2L, ParticipationResultDto.Status.ADDED));
+        given(sessionService.participateAll(Arrays.asList(
+                new ParticipationResultDto(1L, 2L, null),
+                new ParticipationResultDto(1L, 3L, null),
+                new ParticipationResultDto(1L, 4L, null)))).willReturn(results);
+
+        ResponseEntity<?> response = sessionController.participateAll(request);
+
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        assertThat(response.getBody()).isEqualTo(results);
+    }
+
+    @Test
+    void participateAll_WithOneUserAndManySessions_ShouldRemove() {
+        // Désinscription d'un utilisateur de deux sessions
+        BulkParticipationRequest request = new BulkParticipationRequest();
+        request.setAction(BulkParticipationRequest.Action.REMOVE);
+        request.setUserId(2L);
+        request.setSessionIds(Arrays.asList(1L, 5L));
+
+        ResponseEntity<?> response = sessionController.participateAll(request);
+
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        verify(sessionService).noLongerParticipateAll(Arrays.asList(
+                new ParticipationResultDto(1L, 2L, null),
+                new ParticipationResultDto(5L, 2L, null)));
+    }
+
+    @Test
+    void participateAll_WithAmbiguousOrNullIds_ShouldReturnBadRequest() {
+        // Les deux formes à la fois : requête refusée
+        BulkParticipationRequest request = new BulkParticipationRequest();
+        request.setAction(BulkParticipationRequest.Action.ADD);
+        request.setSessionId(1L);
+        request.setUserIds(Arrays.asList(2L, 3L));
+        request.setUserId(2L);
+        assertThat(sessionController.participateAll(request).getStatusCodeValue()).isEqualTo(400);
+
+        // Identifiant manquant dans la liste
+        request.setUserId(null);
+        request.setUserIds(Arrays.asList(2L, null));
+        assertThat(sessionController.participateAll(request).getStatusCodeValue()).isEqualTo(400);
+
+        verify(sessionService, never()).participateAll(anyList());
+    }
+
+    // ---------- Tests du endpoint search ----------
+    @Test
+    void search_WithFilters_ShouldReturnPageOfSessions() {
+        // Les cours de la semaine du professeur 3, triés par date décroissante
+        PageRequest pageRequest = PageRequest.of(1, 10, Sort.by(Sort.Direction.DESC, "date").and(Sort.by("id")));
+        given(sessionService.search(any(Date.class), any(Date.class), eq(3L), eq("Yo"), eq(pageRequest)))
+                .willReturn(new PageImpl<>(Collections.singletonList(session), pageRequest, 11));
+        given(sessionService.findParticipantIds(Collections.singletonList(session))).willReturn(Collections.emptyMap());
+        given(sessionMapper.toDto(Collections.singletonList(session), Collections.emptyMap()))
+                .willReturn(Collections.singletonList(sessionDto));
+
+        ResponseEntity<?> response = sessionController.search(
+                "2024-05-06", "2024-05-13T00:00:00+02:00", "3", "Yo", "-date", "1", "10", webRequest);
+
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        assertThat(response.getBody()).isEqualTo(new SessionSearchDto(Collections.singletonList(sessionDto), 1, 10, 11));
+    }
+
+    @Test
+    void search_WithInvalidParameters_ShouldReturnBadRequest() {
+        // Date, tri ou pagination invalides
+        assertThat(sessionController.search("06/05/2024", null, null, null, "date", "0", null, webRequest).getStatusCodeValue()).isEqualTo(400);
+        assertThat(sessionController.search(null, null, null, null, "description", "0", null, webRequest).getStatusCodeValue()).isEqualTo(400);
+        assertThat(sessionController.search(null, null, "abc", null, "date", "0", null, webRequest).getStatusCodeValue()).isEqualTo(400);
+        assertThat(sessionController.search(null, null, null, null, "date", "-1", null, webRequest).getStatusCodeValue()).isEqualTo(400);
+
+        verify(sessionService, never()).search(any(), any(), any(), any(), any());
+    }
+
+    // ---------- Tests du endpoint findMine ----------
+    @Test
+    void findMine_WhenAuthenticated_ShouldReturnSessionsOfCurrentUser() {
+        // Utilisateur connecté d'identifiant 7
+        UserDetailsImpl userDetails = UserDetailsImpl.builder().id(7L).username("yoga@studio.com").build();
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(userDetails, null));
+        try {
+            given(sessionService.findParticipantPage(7L, null, 20))
+                    .willReturn(new SliceImpl<>(Collections.singletonList(session), PageRequest.of(0, 20), false));
+            given(sessionService.findParticipantIds(Collections.singletonList(session))).willReturn(Collections.emptyMap());
+            given(sessionMapper.toDto(Collections.singletonList(session), Collections.emptyMap()))
+                    .willReturn(Collections.singletonList(sessionDto));
+
+            ResponseEntity<?> response = sessionController.findMine(null, null, webRequest);
+
+            assertThat(response.getStatusCodeValue()).isEqualTo(200);
+            assertThat(response.getBody()).isEqualTo(new SessionPageDto(Collections.singletonList(sessionDto), null));
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    @Test
+    void findMine_WhenNotAuthenticated_ShouldReturnUnauthorized() {
+        SecurityContextHolder.clearContext();
+
+        ResponseEntity<?> response = sessionController.findMine(null, null, webRequest);
+
+        assertThat(response.getStatusCodeValue()).isEqualTo(401);
+        verifyNoInteractions(sessionService);
+    }
+
+    // ---------- Tests des requêtes conditionnelles ----------
+    @Test
+    void findById_WithMatchingIfNoneMatch_ShouldReturnNotModifiedWithoutBuildingDto() {
+        sessionDto.setUpdatedAt(LocalDateTime.of(2024, 5, 6, 10, 0));
+        given(sessionService.getById(1L)).willReturn(session);
+        given(sessionService.findParticipantIds(session)).willReturn(Collections.emptyList());
+        given(sessionMapper.toDto(session, Collections.emptyList())).willReturn(sessionDto);
+
+        // Premier appel : réponse complète avec ETag et Last-Modified
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        sessionController.findById("1", new ServletWebRequest(new MockHttpServletRequest("GET", "/"), firstResponse));
+        String etag = firstResponse.getHeader("ETag");
+        assertThat(etag).startsWith("W/\"");
+        assertThat(firstResponse.getHeader("Last-Modified")).isNotNull();
+
+        // Second appel avec l'ETag reçu : 304 sans relire la session
+        MockHttpServletRequest conditionalRequest = new MockHttpServletRequest("GET", "/api/session/1");
+        conditionalRequest.addHeader("If-None-Match", etag);
+        ResponseEntity<?> response = sessionController.findById("1",
+                new ServletWebRequest(conditionalRequest, new MockHttpServletResponse()));
+
+        assertThat(response.getStatusCodeValue()).isEqualTo(304);
+        verify(sessionService, times(1)).getById(1L);
+        verify(sessionMapper, times(1)).toDto(any(Session.class), any());
+    }
+
+    @Test
+    void findById_WithMatchingIfNoneMatchOnCacheMiss_ShouldCheckUpdatedAtOnly() {
+        LocalDateTime updatedAt = LocalDateTime.of(2024, 5, 6, 10, 0);
+        sessionDto.setUpdatedAt(updatedAt);
+        given(sessionService.getById(1L)).willReturn(session);
+        given(sessionService.findParticipantIds(session)).willReturn(Collections.emptyList());
+        given(sessionMapper.toDto(session, Collections.emptyList())).willReturn(sessionDto);
+        given(sessionService.getUpdatedAt(1L)).willReturn(updatedAt);
+
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        sessionController.findById("1", new ServletWebRequest(new MockHttpServletRequest("GET", "/"), firstResponse));
+
+        // Vue évincée du cache : seule la date de mise à jour est relue, la session n'est pas reconstruite
+        sessionViewCache.clear();
+        MockHttpServletRequest conditionalRequest = new MockHttpServletRequest("GET", "/api/session/1");
+        conditionalRequest.addHeader("If-None-Match", firstResponse.getHeader("ETag"));
+        ResponseEntity<?> response = sessionController.findById("1",
+                new ServletWebRequest(conditionalRequest, new MockHttpServletResponse()));
+
+        assertThat(response.getStatusCodeValue()).isEqualTo(304);
+        verify(sessionService, times(1)).getUpdatedAt(1L);
+        verify(sessionService, times(1)).getById(1L);
+        verify(sessionMapper, times(1)).toDto(any(Session.class), any());
+    }
+
+    @Test
+    void findAll_WhenSessionsChanged_ShouldAnswerWithNewBody() {
+        Freshness before = freshness(20, LocalDateTime.of(2024, 5, 6, 10, 0));
+        Freshness after = freshness(19, LocalDateTime.of(2024, 5, 6, 10, 0));
+        given(sessionService.getFreshness()).willReturn(before, before, after);
+        given(sessionService.findAll()).willReturn(Collections.singletonList(session));
+
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        sessionController.findAll(null, null, new ServletWebRequest(new MockHttpServletRequest("GET", "/"), firstResponse));
+        MockHttpServletRequest conditionalRequest = new MockHttpServletRequest("GET", "/api/session");
+        conditionalRequest.addHeader("If-None-Match", firstResponse.getHeader("ETag"));
+
+        // Rien n'a changé : 304
+        assertThat(sessionController.findAll(null, null,
+                new ServletWebRequest(conditionalRequest, new MockHttpServletResponse())).getStatusCodeValue()).isEqualTo(304);
+        // Une session supprimée : liste renvoyée en entier
+        assertThat(sessionController.findAll(null, null,
+                new ServletWebRequest(conditionalRequest, new MockHttpServletResponse())).getStatusCodeValue()).isEqualTo(200);
+        verify(sessionService, times(2)).findAll();
+    }
+
+    private static Freshness freshness(long count, LocalDateTime lastUpdated) {
+        return new Freshness() {
+            @Override
+            public long getCount() {
+                return count;
+            }
+
+            @Override
+            public LocalDateTime getLastUpdated() {
+                return lastUpdated;
+            }
+        };
+    }
+
+    // ---------- Tests du endpoint findChanges ----------
+    @Test
+    void findChanges_WithWatermark_ShouldReturnOnlyChanges() {
+        given(sessionService.canReportChangesSince(any())).willReturn(true);
+        given(sessionService.findUpdatedSince(any())).willReturn(Collections.singletonList(session));
+        given(sessionService.findDeletedSince(any())).willReturn(Arrays.asList(4L, 9L));
+        given(sessionService.findParticipantIds(Collections.singletonList(session))).willReturn(Collections.emptyMap());
+        given(sessionMapper.toDto(Collections.singletonList(session), Collections.emptyMap()))
+                .willReturn(Collections.singletonList(sessionDto));
+
+        long before = System.currentTimeMillis();
+        ResponseEntity<?> response = sessionController.findChanges("1715000000000");
+
+        // Une session modifiée, deux supprimées, et un nouveau repère légèrement en retard sur l'heure courante
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        SessionChangesDto changes = (SessionChangesDto) response.getBody();
+        assertThat(changes.getUpdated()).containsExactly(sessionDto);
+        assertThat(changes.getDeleted()).containsExactly(4L, 9L);
+        assertThat(Long.parseLong(changes.getWatermark())).isLessThan(before).isGreaterThan(before - 60000);
+        verify(sessionService, never()).findAll();
+    }
+
+    @Test
+    void findChanges_WithoutWatermark_ShouldReturnEverySession() {
+        given(sessionService.findAll()).willReturn(Collections.singletonList(session));
+
+        ResponseEntity<?> response = sessionController.findChanges(null);
+
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        assertThat(((SessionChangesDto) response.getBody()).getDeleted()).isEmpty();
+        verify(sessionService, never()).findDeletedSince(any());
+    }
+
+    @Test
+    void findChanges_WithExpiredOrInvalidWatermark_ShouldBeRejected() {
+        given(sessionService.canReportChangesSince(any())).willReturn(false);
+
+        // Repère trop ancien : le client doit tout recharger
+        assertThat(sessionController.findChanges("1").getStatusCodeValue()).isEqualTo(410);
+        assertThat(sessionController.findChanges("yesterday").getStatusCodeValue()).isEqualTo(400);
+        verify(sessionService, never()).findUpdatedSince(any());
+    }
+
+    // ---------- Tests du endpoint events ----------
+    @Test
+    void events_ShouldSubscribeToBroadcaster() {
+        SseEmitter emitter = new SseEmitter();
+        given(sessionEventBroadcaster.subscribe()).willReturn(emitter);
+
+        assertThat(sessionController.events()).isSameAs(emitter);
+    }
+}
@@ -3,6 +3,8 @@ package com.openclassrooms.starterjwt.controllers;
 import com.openclassrooms.starterjwt.dto.TeacherDto;
 import com.openclassrooms.starterjwt.mapper.TeacherMapper;
 import com.openclassrooms.starterjwt.models.Teacher;
+import com.openclassrooms.starterjwt.repository.Freshness;
+import com.openclassrooms.starterjwt.security.services.UserDetailsImpl;
 import com.openclassrooms.starterjwt.services.TeacherService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,13 +13,22 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.ResponseEntity;
-
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 // Active l'utilisation de Mockito avec JUnit 5
@@ -33,6 +44,9 @@ public class TeacherControllerTest {
     @InjectMocks
     private TeacherController teacherController;
 
+    // Requête sans en-têtes conditionnels
+    private final WebRequest webRequest = new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse());
+
     private Teacher teacher1;
     private Teacher teacher2;
     private TeacherDto teacherDto1;
@@ -69,7 +83,7 @@ public class TeacherControllerTest {
         given(teacherMapper.toDto(teacher1)).willReturn(teacherDto1);
 
         // Act : Appel de la méthode du contrôleur
-        ResponseEntity<?> response = teacherController.findById("1");
+        ResponseEntity<?> response = teacherController.findById("1", webRequest);
 
         // Assert : Vérification du code HTTP et du contenu retourné
         assertThat(response.getStatusCodeValue()).isEqualTo(200);
@@ -84,7 +98,7 @@ public class TeacherControllerTest {
         given(teacherService.findById(anyLong())).willReturn(null);
 
         // Act
-        ResponseEntity<?> response = teacherController.findById("1");
+        ResponseEntity<?> response = teacherController.findById("1", webRequest);
 
         // Assert : On attend un 404 NOT FOUND
         assertThat(response.getStatusCodeValue()).isEqualTo(404);
@@ -94,7 +108,7 @@ public class TeacherControllerTest {
     @Test
     void findById_WhenInvalidIdFormat_ShouldReturnBadRequest() {
         // Act : Appel avec un ID invalide (non numérique)
-        ResponseEntity<?> response = teacherController.findById("invalid");
+        ResponseEntity<?> response = teacherController.findById("invalid", webRequest);
 
         // Assert : On attend un 400 BAD REQUEST
         assertThat(response.getStatusCodeValue()).isEqualTo(400);
@@ -110,7 +124,7 @@ public class TeacherControllerTest {
         given(teacherMapper.toDto(teachers)).willReturn(teacherDtos);
 
         // Act : Appel du contrôleur
-        ResponseEntity<?> response = teacherController.findAll();
+        ResponseEntity<?> response = teacherController.findAll(webRequest);
 
         // Assert : 200 OK + vérification du contenu
         assertThat(response.getStatusCodeValue()).isEqualTo(200);
@@ -129,7 +143,7 @@ public class TeacherControllerTest {
         given(teacherMapper.toDto(emptyList)).willReturn(emptyDtoList);
 
         // Act
-        ResponseEntity<?> response = teacherController.findAll();
+        ResponseEntity<?> response = teacherController.findAll(webRequest);
 
         // Assert : 200 OK avec une liste vide
         assertThat(response.getStatusCodeValue()).isEqualTo(200);
@@ -137,4 +151,63 @@ public class TeacherControllerTest {
         verify(teacherService).findAll();
         verify(teacherMapper).toDto(emptyList);
     }
+
+    @Test
+    void refresh_WhenAdmin_ShouldReloadTeacherCatalog() {
+        UserDetailsImpl admin = UserDetailsImpl.builder().id(1L).username("admin@studio.com").admin(true).build();
+        SecurityContextHolder.clearContext(); // Nettoyer le contexte laissé par d'autres tests
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(admin, null));
+        try {
+            ResponseEntity<?> response = teacherController.refresh();
+
+            // Rechargement complet, même si la table semble inchangée
+            assertThat(response.getStatusCodeValue()).isEqualTo(200);
+            verify(teacherService).reload();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    @Test
+    void refresh_WhenNotAdmin_ShouldReturnUnauthorizedWithoutReloading() {
+        UserDetailsImpl user = UserDetailsImpl.builder().id(2L).username("yoga@studio.com").admin(false).build();
+        SecurityContextHolder.clearContext(); // Nettoyer le contexte laissé par d'autres tests
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(user, null));
+        try {
+            ResponseEntity<?> response = teacherController.refresh();
+
+            // Un simple utilisateur ne peut pas forcer la relecture de la table
+            assertThat(response.getStatusCodeValue()).isEqualTo(401);
+            verify(teacherService, never()).reload();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    // Liste inchangée depuis la dernière lecture : 304 sans construire les DTO
+    @Test
+    void findAll_WithMatchingIfNoneMatch_ShouldReturnNotModified() {
+        Freshness freshness = new Freshness() {
+            @Override
+            public long getCount() {
+                return 2;
+            }
+
+            @Override
+            public LocalDateTime getLastUpdated() {
+                return LocalDateTime.of(2024, 5, 6, 10, 0);
+            }
+        };
+        given(teacherService.getFreshness()).willReturn(freshness);
+        given(teacherService.findAll()).willReturn(Arrays.asList(teacher1, teacher2));
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        teacherController.findAll(new ServletWebRequest(new MockHttpServletRequest("GET", "/"), firstResponse));
+
+        MockHttpServletRequest conditionalRequest = new MockHttpServletRequest("GET", "/api/teacher");
+        conditionalRequest.addHeader("If-None-Match", firstResponse.getHeader("ETag"));
+        ResponseEntity<?> response = teacherController.findAll(new ServletWebRequest(conditionalRequest, new MockHttpServletResponse()));
+
+        assertThat(response.getStatusCodeValue()).isEqualTo(304);
+        verify(teacherService, times(1)).findAll();
+    }
 }
@@ -12,13 +12,19 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
 
 
+import java.time.LocalDateTime;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.BDDMockito.given;
@@ -39,6 +45,9 @@ class UserControllerTest {
     @InjectMocks
     private UserController userController;
 
+    // Requête sans en-têtes conditionnels
+    private final WebRequest webRequest = new ServletWebRequest(new MockHttpServletRequest(), new MockHttpServletResponse());
+
     // Objet User simulé
     private User testUser;
 
@@ -69,7 +78,7 @@ class UserControllerTest {
         given(userMapper.toDto(testUser)).willReturn(testUserDto);
 
         // Act (Exécution)
-        ResponseEntity<?> response = userController.findById("1");
+        ResponseEntity<?> response = userController.findById("1", webRequest);
 
         // Assert (Vérification)
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
@@ -85,7 +94,7 @@ class UserControllerTest {
         given(userService.findById(anyLong())).willReturn(null);
 
         // Act
-        ResponseEntity<?> response = userController.findById("1");
+        ResponseEntity<?> response = userController.findById("1", webRequest);
 
         // Assert
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
@@ -97,7 +106,7 @@ class UserControllerTest {
     @Test
     void findById_WhenInvalidIdFormat_ShouldReturnBadRequest() {
         // Act
-        ResponseEntity<?> response = userController.findById("invalid");
+        ResponseEntity<?> response = userController.findById("invalid", webRequest);
 
         // Assert
         assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
@@ -180,4 +189,20 @@ class UserControllerTest {
         verify(userService, never()).findById(anyLong());
         verify(userService, never()).delete(anyLong());
     }
-}
\ No newline at end of file
+
+    // Profil inchangé depuis la dernière lecture : 304 sans relire l'utilisateur
+    @Test
+    void findById_WithMatchingIfNoneMatch_ShouldReturnNotModified() {
+        given(userService.getUpdatedAt(1L)).willReturn(LocalDateTime.of(2024, 5, 6, 10, 0));
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        userController.findById("1", new ServletWebRequest(new MockHttpServletRequest("GET", "/"), firstResponse));
+
+        MockHttpServletRequest conditionalRequest = new MockHttpServletRequest("GET", "/api/user/1");
+        conditionalRequest.addHeader("If-None-Match", firstResponse.getHeader("ETag"));
+        ResponseEntity<?> response = userController.findById("1",
+                new ServletWebRequest(conditionalRequest, new MockHttpServletResponse()));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        verify(userService, times(1)).findById(1L);
+    }
+}
@@ -0,0 +1,63 @@
+package com.openclassrooms.starterjwt.exception;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ErrorResponseWriterTest {
+
+    private final ErrorResponseWriter writer = new ErrorResponseWriter();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void write_ShouldProduceSameBodyAsJackson() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        writer.write(response, HttpStatus.UNAUTHORIZED, "Full authentication is required", "/api/session");
+
+        // Le corps contient les quatre champs attendus et sa longueur est connue
+        assertEquals(401, response.getStatus());
+        assertEquals("application/json", response.getContentType());
+        assertEquals(response.getContentAsByteArray().length, response.getContentLength());
+        JsonNode body = mapper.readTree(response.getContentAsByteArray());
+        assertEquals(401, body.get("status").asInt());
+        assertEquals("Unauthorized", body.get("error").asText());
+        assertEquals("Full authentication is required", body.get("message").asText());
+        assertEquals("/api/session", body.get("path").asText());
+    }
+
+    @Test
+    void write_ShouldEscapeMessageAndPath() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        String message = "Session \"Yoga\" \\ introuvable\n\t\u0001 – 🧘";
+
+        writer.write(response, HttpStatus.NOT_FOUND, message, "/api/session/\"1\"");
+
+        // Les caractères spéciaux sont échappés et l'UTF-8 est correct
+        JsonNode body = mapper.readTree(response.getContentAsByteArray());
+        assertEquals(message, body.get("message").asText());
+        assertEquals("/api/session/\"1\"", body.get("path").asText());
+        assertEquals("Not Found", body.get("error").asText());
+    }
+
+    @Test
+    void write_ShouldStreamBodiesLargerThanBuffer() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            message.append("é\"");
+        }
+
+        writer.write(response, HttpStatus.BAD_REQUEST, message.toString(), null);
+
+        // Le corps est écrit en plusieurs fois, sans en-tête Content-Length
+        JsonNode body = mapper.readTree(response.getContentAsByteArray());
+        assertEquals(message.toString(), body.get("message").asText());
+        assertEquals("", body.get("path").asText());
+    }
+}
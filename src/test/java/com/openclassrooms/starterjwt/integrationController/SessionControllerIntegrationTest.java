@@ -6,6 +6,7 @@ import com.openclassrooms.starterjwt.dto.SessionDto;
 import com.openclassrooms.starterjwt.mapper.SessionMapper;
 import com.openclassrooms.starterjwt.models.Session;
 import com.openclassrooms.starterjwt.services.SessionService;
+import com.openclassrooms.starterjwt.services.SessionViewCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,6 +19,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -47,6 +49,9 @@ public class SessionControllerIntegrationTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private SessionViewCache sessionViewCache;
+
     private Session session;
     private SessionDto sessionDto;
     private final Date fixedDate = new Date(1700000000000L); // Date fixe pour les tests
@@ -55,6 +60,8 @@ public class SessionControllerIntegrationTest {
     public void setup() {
         // Configure MockMvc avec le contrôleur réel
         mockMvc = MockMvcBuilders.standaloneSetup(sessionController).build();
+        // Le cache est partagé par le contexte Spring : on le vide entre les tests
+        sessionViewCache.clear();
 
         // Initialisation d’une session fictive
         session = new Session();
@@ -76,7 +83,8 @@ public class SessionControllerIntegrationTest {
     @Test
     public void shouldGetSessionById() throws Exception {
         when(sessionService.getById(anyLong())).thenReturn(session);
-        when(sessionMapper.toDto(any(Session.class))).thenReturn(sessionDto);
+        when(sessionService.findParticipantIds(session)).thenReturn(Arrays.asList(10L));
+        when(sessionMapper.toDto(session, Arrays.asList(10L))).thenReturn(sessionDto);
 
         mockMvc.perform(get("/api/session/1")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -85,7 +93,7 @@ public class SessionControllerIntegrationTest {
                 .andExpect(jsonPath("$.name").value("Test Session"));// Vérifie le nom
 
         verify(sessionService, times(1)).getById(1L);
-        verify(sessionMapper, times(1)).toDto(session);
+        verify(sessionMapper, times(1)).toDto(session, Arrays.asList(10L));
     }
 
     // Test : session inexistante => doit retourner 404
@@ -115,7 +123,7 @@ public class SessionControllerIntegrationTest {
         List<SessionDto> sessionDtos = Arrays.asList(sessionDto);
 
         when(sessionService.findAll()).thenReturn(sessions);
-        when(sessionMapper.toDto(sessions)).thenReturn(sessionDtos);
+        when(sessionMapper.toDto(sessions, Collections.emptyMap())).thenReturn(sessionDtos);
 
         mockMvc.perform(get("/api/session")
                         .contentType(MediaType.APPLICATION_JSON))
@@ -124,7 +132,7 @@ public class SessionControllerIntegrationTest {
                 .andExpect(jsonPath("$[0].name").value("Test Session"));
 
         verify(sessionService, times(1)).findAll();
-        verify(sessionMapper, times(1)).toDto(sessions);
+        verify(sessionMapper, times(1)).toDto(sessions, Collections.emptyMap());
     }
 
     // Test : création d'une nouvelle session
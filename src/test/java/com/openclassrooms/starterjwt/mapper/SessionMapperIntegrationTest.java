@@ -1,6 +1,7 @@
 package com.openclassrooms.starterjwt.mapper;
 
 import com.openclassrooms.starterjwt.dto.SessionDto;
+import com.openclassrooms.starterjwt.exception.BadRequestException;
 import com.openclassrooms.starterjwt.models.Session;
 import com.openclassrooms.starterjwt.models.User;
 import com.openclassrooms.starterjwt.models.Teacher;
@@ -12,7 +13,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest
@@ -43,9 +56,11 @@ public class SessionMapperIntegrationTest {
         user2.setId(20L);
 
         // Mock des services
-        when(teacherService.findById(1L)).thenReturn(teacher);
-        when(userService.findById(10L)).thenReturn(user1);
-        when(userService.findById(20L)).thenReturn(user2);
+        when(teacherService.findOrLoad(1L)).thenReturn(teacher);
+        when(userService.findAllById(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            return Stream.of(user1, user2).filter(user -> ids.contains(user.getId())).collect(Collectors.toList());
+        });
     }
 
     @Test
@@ -63,6 +78,46 @@ public class SessionMapperIntegrationTest {
         assertThat(entity.getDescription()).isEqualTo("session desc");
         assertThat(entity.getTeacher()).isEqualTo(teacher);
         assertThat(entity.getUsers()).containsExactlyInAnyOrder(user1, user2);
+        // Une seule requête pour tous les participants
+        verify(userService, times(1)).findAllById(anyCollection());
+        verify(userService, never()).findById(anyLong());
+    }
+
+    @Test
+    public void testToEntityList_shouldResolveAllUsersInOneCall() {
+        SessionDto first = new SessionDto();
+        first.setUsers(Arrays.asList(10L, 20L));
+        SessionDto second = new SessionDto();
+        second.setUsers(Arrays.asList(20L));
+
+        List<Session> entities = sessionMapper.toEntity(Arrays.asList(first, second));
+
+        // Les identifiants de toutes les sessions sont résolus ensemble
+        assertThat(entities.get(0).getUsers()).containsExactly(user1, user2);
+        assertThat(entities.get(1).getUsers()).containsExactly(user2);
+        verify(userService, times(1)).findAllById(anyCollection());
+    }
+
+    @Test
+    public void testToEntity_shouldRejectUnknownUserIds() {
+        SessionDto dto = new SessionDto();
+        dto.setUsers(Arrays.asList(10L, 99L));
+
+        // Un identifiant inconnu n'est plus remplacé silencieusement par null
+        assertThatThrownBy(() -> sessionMapper.toEntity(dto))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessage("Unknown user ids: [99]");
+    }
+
+    @Test
+    public void testToEntity_shouldRejectUnknownTeacherId() {
+        SessionDto dto = new SessionDto();
+        dto.setTeacher_id(42L);
+
+        // Un professeur introuvable, même en base, n'est jamais enregistré comme null
+        assertThatThrownBy(() -> sessionMapper.toEntity(dto))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessage("Unknown teacher id: 42");
     }
 
     @Test
@@ -81,5 +136,22 @@ public class SessionMapperIntegrationTest {
         assertThat(dto.getTeacher_id()).isEqualTo(teacher.getId());
         assertThat(dto.getUsers()).containsExactlyInAnyOrder(10L, 20L);
     }
-}
 
+    @Test
+    public void testToDtoWithParticipantIds_shouldNotReadUsers() {
+        // Session dont les participants ne sont connus que par leurs identifiants
+        Session session = spy(new Session());
+        session.setId(5L);
+        session.setDescription("session desc");
+        session.setTeacher(teacher);
+
+        SessionDto dto = sessionMapper.toDto(session, Arrays.asList(10L, 20L));
+        List<SessionDto> dtos = sessionMapper.toDto(Arrays.asList(session), Collections.singletonMap(5L, Arrays.asList(30L)));
+
+        // Les entités User ne sont jamais lues
+        assertThat(dto.getUsers()).containsExactly(10L, 20L);
+        assertThat(dto.getTeacher_id()).isEqualTo(teacher.getId());
+        assertThat(dtos.get(0).getUsers()).containsExactly(30L);
+        verify(session, never()).getUsers();
+    }
+}
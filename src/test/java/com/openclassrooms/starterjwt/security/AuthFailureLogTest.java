@@ -0,0 +1,43 @@
+package com.openclassrooms.starterjwt.security;
+
+import com.openclassrooms.starterjwt.security.jwt.AuthFailureLog;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuthFailureLogTest {
+
+    @Test
+    void record_ShouldOnlySampleFirstFailuresOfEachTypePerInterval() {
+        AuthFailureLog log = new AuthFailureLog(2);
+
+        // Une rafale de tokens expirés et un token mal formé
+        for (int i = 0; i < 1000; i++) {
+            log.record(AuthFailureLog.Type.EXPIRED_TOKEN, "JWT expired");
+        }
+        log.record(AuthFailureLog.Type.MALFORMED_TOKEN, "bad token");
+
+        // Seuls les deux premiers échecs de chaque type sont journalisés en détail
+        assertEquals(1000, log.getTotalCount(AuthFailureLog.Type.EXPIRED_TOKEN));
+        assertEquals(1000, log.getIntervalCount(AuthFailureLog.Type.EXPIRED_TOKEN));
+        assertEquals(1, log.getTotalCount(AuthFailureLog.Type.MALFORMED_TOKEN));
+        assertEquals(998, log.getSuppressedCount());
+    }
+
+    @Test
+    void flush_ShouldStartNewIntervalAndKeepTotals() {
+        AuthFailureLog log = new AuthFailureLog(1);
+        log.record(AuthFailureLog.Type.UNAUTHORIZED, "Full authentication is required");
+        log.record(AuthFailureLog.Type.UNAUTHORIZED, "Full authentication is required");
+
+        log.flush();
+
+        // Le compteur d'intervalle repart à zéro, le total est conservé
+        assertEquals(0, log.getIntervalCount(AuthFailureLog.Type.UNAUTHORIZED));
+        assertEquals(2, log.getTotalCount(AuthFailureLog.Type.UNAUTHORIZED));
+
+        // Un nouvel échantillon est à nouveau journalisé dans l'intervalle suivant
+        log.record(AuthFailureLog.Type.UNAUTHORIZED, "Full authentication is required");
+        assertEquals(1, log.getSuppressedCount());
+    }
+}
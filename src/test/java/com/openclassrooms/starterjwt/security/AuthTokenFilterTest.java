@@ -10,9 +10,13 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.openclassrooms.starterjwt.security.jwt.AuthFailureLog;
 import com.openclassrooms.starterjwt.security.jwt.AuthTokenFilter;
 import com.openclassrooms.starterjwt.security.jwt.JwtUtils;
+import com.openclassrooms.starterjwt.security.services.UserDetailsImpl;
 import com.openclassrooms.starterjwt.security.services.UserDetailsServiceImpl;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -32,6 +36,9 @@ public class AuthTokenFilterTest {
     @Mock
     private UserDetailsServiceImpl userDetailsService;
 
+    @Mock
+    private AuthFailureLog authFailureLog;
+
     @Mock
     private HttpServletRequest request;
 
@@ -91,8 +98,7 @@ public class AuthTokenFilterTest {
 
         // Mock du header, validation du token et récupération du nom d'utilisateur
         when(request.getHeader("Authorization")).thenReturn(authHeader);
-        when(jwtUtils.validateJwtToken(validToken)).thenReturn(true);
-        when(jwtUtils.getUserNameFromJwtToken(validToken)).thenReturn(username);
+        when(jwtUtils.parseVerifiedClaims(validToken)).thenReturn(Jwts.claims().setSubject(username));
         when(userDetailsService.loadUserByUsername(username)).thenReturn(userDetails);
 
         // Exécution du filtre (simulateur de requête)
@@ -105,4 +111,69 @@ public class AuthTokenFilterTest {
         assertNotNull(SecurityContextHolder.getContext().getAuthentication());
         assertEquals(username, SecurityContextHolder.getContext().getAuthentication().getName());
     }
+
+    @Test
+    void doFilterInternal_ShouldNotAuthenticate_WhenInvalidToken() throws ServletException, IOException {
+        // Cas : Le token est rejeté à la vérification, aucun utilisateur n'est chargé
+        when(request.getHeader("Authorization")).thenReturn("Bearer " + invalidToken);
+        when(jwtUtils.parseVerifiedClaims(invalidToken)).thenReturn(null);
+
+        authTokenFilter.doFilterInternal(request, response, filterChain);
+
+        // La chaîne continue mais le contexte de sécurité reste vide
+        verify(filterChain).doFilter(request, response);
+        verifyNoInteractions(userDetailsService);
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void doFilterInternal_ShouldBuildPrincipalFromClaims_WhenStatelessMode() throws ServletException, IOException {
+        // Cas : Mode sans état, le principal est reconstruit à partir des claims sans accès à la base
+        Claims claims = Jwts.claims().setSubject(username);
+        UserDetailsImpl principal = UserDetailsImpl.builder().id(1L).username(username).admin(false).build();
+
+        when(request.getHeader("Authorization")).thenReturn(authHeader);
+        when(jwtUtils.parseVerifiedClaims(validToken)).thenReturn(claims);
+        when(jwtUtils.isStatelessPrincipal()).thenReturn(true);
+        when(jwtUtils.getPrincipalFromClaims(claims)).thenReturn(principal);
+
+        authTokenFilter.doFilterInternal(request, response, filterChain);
+
+        // Le service utilisateur n'est jamais sollicité
+        verify(filterChain).doFilter(request, response);
+        verifyNoInteractions(userDetailsService);
+        assertEquals(principal, SecurityContextHolder.getContext().getAuthentication().getPrincipal());
+    }
+
+    @Test
+    void doFilterInternal_ShouldNotAuthenticate_WhenRefreshTokenIsUsed() throws ServletException, IOException {
+        // Cas : Un refresh token ne permet pas d'appeler l'API
+        Claims claims = Jwts.claims().setSubject(username);
+        when(request.getHeader("Authorization")).thenReturn(authHeader);
+        when(jwtUtils.parseVerifiedClaims(validToken)).thenReturn(claims);
+        when(jwtUtils.isRefreshToken(claims)).thenReturn(true);
+
+        authTokenFilter.doFilterInternal(request, response, filterChain);
+
+        verify(filterChain).doFilter(request, response);
+        verifyNoInteractions(userDetailsService);
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void doFilterInternal_ShouldRecordFailure_WhenUserCannotBeLoaded() throws ServletException, IOException {
+        // Cas : L'utilisateur du token n'existe plus
+        Claims claims = Jwts.claims().setSubject(username);
+        RuntimeException failure = new RuntimeException("User Not Found");
+        when(request.getHeader("Authorization")).thenReturn(authHeader);
+        when(jwtUtils.parseVerifiedClaims(validToken)).thenReturn(claims);
+        when(userDetailsService.loadUserByUsername(username)).thenThrow(failure);
+
+        authTokenFilter.doFilterInternal(request, response, filterChain);
+
+        // L'échec est compté par le journal échantillonné et la requête continue sans authentification
+        verify(authFailureLog).record(AuthFailureLog.Type.AUTHENTICATION_ERROR, failure);
+        verify(filterChain).doFilter(request, response);
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
 }
@@ -0,0 +1,92 @@
+package com.openclassrooms.starterjwt.security;
+
+import com.openclassrooms.starterjwt.exception.ServiceUnavailableException;
+import com.openclassrooms.starterjwt.security.password.BoundedPasswordEncoder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedPasswordEncoderTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final ExecutorService callers = Executors.newFixedThreadPool(2);
+
+    private BoundedPasswordEncoder encoder;
+
+    // Encodeur factice qui bloque jusqu'à ce que le test le libère
+    private final PasswordEncoder blockingEncoder = new PasswordEncoder() {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "hash:" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return encode(rawPassword).equals(encodedPassword);
+        }
+    };
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        callers.shutdownNow();
+        encoder.destroy();
+    }
+
+    @Test
+    void encode_ShouldDelegateAndRecordLatency() {
+        release.countDown();
+        encoder = new BoundedPasswordEncoder(blockingEncoder, 1, 1, 1000);
+
+        // Le hachage est délégué et mesuré
+        assertEquals("hash:secret", encoder.encode("secret"));
+        assertTrue(encoder.matches("secret", "hash:secret"));
+        assertEquals(2, encoder.getHashCount());
+        assertEquals(0, encoder.getRejectedCount());
+
+        // Le résumé périodique ne remet pas les totaux à zéro
+        encoder.logMetrics();
+        encoder.logMetrics();
+        assertEquals(2, encoder.getHashCount());
+    }
+
+    @Test
+    void encode_ShouldRejectImmediately_WhenPoolAndQueueAreFull() throws Exception {
+        encoder = new BoundedPasswordEncoder(blockingEncoder, 1, 1, 5000);
+
+        // Un hachage occupe le thread, un second remplit la file d'attente
+        callers.submit(() -> encoder.encode("first"));
+        callers.submit(() -> encoder.encode("second"));
+        long deadline = System.currentTimeMillis() + 2000;
+        while (encoder.getQueueDepth() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, encoder.getQueueDepth());
+
+        // Le troisième appel est rejeté sans attendre
+        assertThrows(ServiceUnavailableException.class, () -> encoder.encode("third"));
+        assertEquals(1, encoder.getRejectedCount());
+    }
+
+    @Test
+    void matches_ShouldReject_WhenHashingTimesOut() {
+        encoder = new BoundedPasswordEncoder(blockingEncoder, 1, 1, 50);
+
+        // Le hachage ne se termine pas dans le délai imparti
+        assertThrows(ServiceUnavailableException.class, () -> encoder.matches("secret", "hash:secret"));
+        assertEquals(1, encoder.getRejectedCount());
+    }
+}
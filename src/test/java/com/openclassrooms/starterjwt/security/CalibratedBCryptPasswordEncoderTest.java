@@ -0,0 +1,45 @@
+package com.openclassrooms.starterjwt.security;
+
+import com.openclassrooms.starterjwt.security.password.CalibratedBCryptPasswordEncoder;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CalibratedBCryptPasswordEncoderTest {
+
+    @Test
+    void calibrate_ShouldStayWithinBounds() {
+        // Budget nul : on garde le coût minimal
+        assertEquals(4, CalibratedBCryptPasswordEncoder.calibrate(0, 4, 6).getStrength());
+        // Budget très large : on plafonne au coût maximal
+        assertEquals(6, CalibratedBCryptPasswordEncoder.calibrate(60000, 4, 6).getStrength());
+    }
+
+    @Test
+    void upgradeEncoding_ShouldBeTrue_WhenStoredCostDiffers() {
+        CalibratedBCryptPasswordEncoder encoder = new CalibratedBCryptPasswordEncoder(5);
+
+        // Un hash plus faible ou plus fort que le coût calibré est réencodé
+        assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode("password")));
+        assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(6).encode("password")));
+        // Un hash au bon coût est conservé
+        assertFalse(encoder.upgradeEncoding(encoder.encode("password")));
+    }
+
+    @Test
+    void upgradeEncoding_ShouldBeFalse_WhenHashIsNotBCrypt() {
+        CalibratedBCryptPasswordEncoder encoder = new CalibratedBCryptPasswordEncoder(5);
+
+        assertFalse(encoder.upgradeEncoding(null));
+        assertFalse(encoder.upgradeEncoding("plain-text"));
+    }
+
+    @Test
+    void matches_ShouldAcceptHashesOfAnyCost() {
+        CalibratedBCryptPasswordEncoder encoder = new CalibratedBCryptPasswordEncoder(5);
+
+        // La vérification reste possible avant le réencodage
+        assertTrue(encoder.matches("password", new BCryptPasswordEncoder(4).encode("password")));
+    }
+}
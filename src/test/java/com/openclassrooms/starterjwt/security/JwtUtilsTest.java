@@ -0,0 +1,140 @@
+package com.openclassrooms.starterjwt.security;
+
+import com.openclassrooms.starterjwt.security.jwt.AuthFailureLog;
+import com.openclassrooms.starterjwt.security.jwt.JwtUtils;
+import com.openclassrooms.starterjwt.security.jwt.TokenRevocationStore;
+import com.openclassrooms.starterjwt.security.services.UserDetailsImpl;
+import io.jsonwebtoken.Claims;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JwtUtilsTest {
+
+    private JwtUtils jwtUtils;
+
+    private final AuthFailureLog authFailureLog = new AuthFailureLog(1);
+
+    private UserDetailsImpl userDetails;
+
+    @BeforeEach
+    void setUp() {
+        // Configuration équivalente à application.properties
+        jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", "openclassrooms");
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", 60000);
+        ReflectionTestUtils.setField(jwtUtils, "jwtRefreshExpirationMs", 3600000L);
+        ReflectionTestUtils.setField(jwtUtils, "revocationStore", new TokenRevocationStore("", 60000L, 3600000L));
+        ReflectionTestUtils.setField(jwtUtils, "authFailureLog", authFailureLog);
+        ReflectionTestUtils.invokeMethod(jwtUtils, "init");
+
+        userDetails = UserDetailsImpl.builder()
+                .id(7L)
+                .username("yoga@studio.com")
+                .firstName("Yoga")
+                .lastName("Studio")
+                .admin(true)
+                .password("hash")
+                .build();
+    }
+
+    private String generateToken() {
+        return jwtUtils.generateJwtToken(new UsernamePasswordAuthenticationToken(userDetails, null));
+    }
+
+    @Test
+    void parseVerifiedClaims_ShouldReturnSubject_WhenTokenIsValid() {
+        String token = generateToken();
+
+        // Le token est vérifié et le sujet correspond à l'email
+        Claims claims = jwtUtils.parseVerifiedClaims(token);
+        assertNotNull(claims);
+        assertEquals("yoga@studio.com", claims.getSubject());
+        assertEquals(7L, jwtUtils.getUserId(claims));
+    }
+
+    @Test
+    void parseVerifiedClaims_ShouldReturnNull_WhenTokenIsExpiredOrEmpty() {
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", -1000);
+        String expired = generateToken();
+
+        // Un token expiré ou vide est rejeté sans exception
+        assertNull(jwtUtils.parseVerifiedClaims(expired));
+        assertNull(jwtUtils.parseVerifiedClaims(""));
+        assertEquals(1, authFailureLog.getTotalCount(AuthFailureLog.Type.EXPIRED_TOKEN));
+        assertEquals(1, authFailureLog.getTotalCount(AuthFailureLog.Type.EMPTY_CLAIMS));
+    }
+
+    @Test
+    void parseVerifiedClaims_ShouldReturnNull_WhenSignatureIsTampered() {
+        String token = generateToken();
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+        // Une signature modifiée est rejetée
+        assertNull(jwtUtils.parseVerifiedClaims(tampered));
+        assertNull(jwtUtils.parseVerifiedClaims("not.a.token"));
+        assertEquals(1, authFailureLog.getTotalCount(AuthFailureLog.Type.INVALID_SIGNATURE));
+        assertEquals(1, authFailureLog.getTotalCount(AuthFailureLog.Type.MALFORMED_TOKEN));
+    }
+
+    @Test
+    void getPrincipalFromClaims_ShouldReturnNull_WhenStatelessModeIsDisabled() {
+        Claims claims = jwtUtils.parseVerifiedClaims(generateToken());
+
+        // Sans le mode sans état, le token ne transporte pas le profil
+        assertNull(jwtUtils.getPrincipalFromClaims(claims));
+    }
+
+    @Test
+    void getPrincipalFromClaims_ShouldRebuildPrincipal_WhenStatelessModeIsEnabled() {
+        ReflectionTestUtils.setField(jwtUtils, "statelessPrincipal", true);
+
+        UserDetailsImpl principal = jwtUtils.getPrincipalFromClaims(jwtUtils.parseVerifiedClaims(generateToken()));
+
+        // Le profil est reconstruit sans le mot de passe
+        assertNotNull(principal);
+        assertEquals(7L, principal.getId());
+        assertEquals("yoga@studio.com", principal.getUsername());
+        assertEquals("Yoga", principal.getFirstName());
+        assertEquals("Studio", principal.getLastName());
+        assertTrue(principal.getAdmin());
+        assertNull(principal.getPassword());
+    }
+
+    @Test
+    void generateRefreshToken_ShouldBeRecognisedAsRefreshToken() {
+        Claims refreshClaims = jwtUtils.parseVerifiedClaims(jwtUtils.generateRefreshToken(userDetails));
+        Claims accessClaims = jwtUtils.parseVerifiedClaims(generateToken());
+
+        // Seul le refresh token porte le type "refresh"
+        assertEquals("yoga@studio.com", refreshClaims.getSubject());
+        assertTrue(jwtUtils.isRefreshToken(refreshClaims));
+        assertFalse(jwtUtils.isRefreshToken(accessClaims));
+    }
+
+    @Test
+    void getPrincipalFromClaims_ShouldReturnNull_WhenTokenWasIssuedWithoutProfile() {
+        Claims claims = jwtUtils.parseVerifiedClaims(generateToken());
+        ReflectionTestUtils.setField(jwtUtils, "statelessPrincipal", true);
+
+        // L'identifiant seul ne suffit pas à reconstruire le profil
+        assertEquals(7L, jwtUtils.getUserId(claims));
+        assertNull(jwtUtils.getPrincipalFromClaims(claims));
+    }
+
+    @Test
+    void revoke_ShouldOnlyRevokeTheGivenToken() {
+        Claims revoked = jwtUtils.parseVerifiedClaims(generateToken());
+        Claims other = jwtUtils.parseVerifiedClaims(generateToken());
+
+        jwtUtils.revoke(revoked);
+
+        // Chaque token porte un identifiant unique
+        assertNotEquals(revoked.getId(), other.getId());
+        assertTrue(jwtUtils.isRevoked(revoked));
+        assertFalse(jwtUtils.isRevoked(other));
+    }
+}
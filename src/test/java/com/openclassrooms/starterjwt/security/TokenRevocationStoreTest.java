@@ -0,0 +1,98 @@
+package com.openclassrooms.starterjwt.security;
+
+import com.openclassrooms.starterjwt.security.jwt.TokenRevocationStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenRevocationStoreTest {
+
+    private static final long HOUR = 3600000L;
+
+    private final Date now = new Date();
+
+    private final Date inOneHour = new Date(now.getTime() + HOUR);
+
+    private TokenRevocationStore newStore(String file) {
+        return new TokenRevocationStore(file, 900000L, HOUR);
+    }
+
+    @Test
+    void isRevoked_ShouldMatchRevokedTokenId() {
+        TokenRevocationStore store = newStore("");
+
+        store.revokeToken("1f2e3d4c5b6a7988", inOneHour);
+
+        // Seul l'identifiant révoqué est refusé
+        assertTrue(store.isRevoked("1f2e3d4c5b6a7988", 1L, now));
+        assertFalse(store.isRevoked("0a0b0c0d", 1L, now));
+        assertFalse(store.isRevoked("not-hex", 1L, now));
+        assertFalse(store.isRevoked(null, 1L, now));
+    }
+
+    @Test
+    void isRevoked_ShouldRejectTokensIssuedBeforeUserWatermark() {
+        TokenRevocationStore store = newStore("");
+
+        store.revokeUser(5L);
+
+        // Les tokens émis avant la révocation sont refusés, pas ceux émis ensuite
+        assertTrue(store.isRevoked("abc", 5L, new Date(now.getTime() - 60000)));
+        assertFalse(store.isRevoked("abc", 5L, new Date(now.getTime() + 5000)));
+        assertFalse(store.isRevoked("abc", 6L, now));
+        assertFalse(store.isRevoked("abc", null, now));
+    }
+
+    @Test
+    void purgeAndPersist_ShouldDropEntriesPastTokenExpiry() {
+        TokenRevocationStore store = newStore("");
+
+        store.revokeToken("aa", new Date(now.getTime() - 5000));
+        store.revokeToken("bb", inOneHour);
+        store.revokeUser(5L);
+
+        store.purgeAndPersist();
+
+        // Le token déjà expiré n'a plus besoin d'être retenu
+        assertEquals(1, store.getRevokedTokenCount());
+        assertEquals(1, store.getRevokedUserCount());
+        assertTrue(store.isRevoked("bb", null, null));
+    }
+
+    @Test
+    void revokeToken_ShouldHandleManyEntries() {
+        TokenRevocationStore store = newStore("");
+
+        for (long id = 1; id <= 200_000; id++) {
+            store.revokeToken(Long.toHexString(id), inOneHour);
+        }
+
+        // Toutes les entrées restent accessibles après les redimensionnements
+        assertEquals(200_000, store.getRevokedTokenCount());
+        for (long id = 1; id <= 200_000; id += 997) {
+            assertTrue(store.isRevoked(Long.toHexString(id), null, null));
+        }
+        assertFalse(store.isRevoked(Long.toHexString(200_001), null, null));
+    }
+
+    @Test
+    void load_ShouldRestorePersistedEntries(@TempDir Path directory) {
+        String file = directory.resolve("revocations.bin").toString();
+        TokenRevocationStore store = newStore(file);
+        store.revokeToken("cafe", inOneHour);
+        store.revokeUser(9L);
+        store.purgeAndPersist();
+
+        // Un nouveau store relit le fichier au démarrage
+        TokenRevocationStore restarted = newStore(file);
+        ReflectionTestUtils.invokeMethod(restarted, "load");
+
+        assertTrue(restarted.isRevoked("cafe", null, null));
+        assertTrue(restarted.isRevoked("other", 9L, new Date(now.getTime() - 60000)));
+    }
+}
@@ -0,0 +1,82 @@
+package com.openclassrooms.starterjwt.security;
+
+import com.openclassrooms.starterjwt.models.User;
+import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.security.services.PrincipalCache;
+import com.openclassrooms.starterjwt.security.services.UserDetailsImpl;
+import com.openclassrooms.starterjwt.security.services.UserDetailsServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class UserDetailsServiceImplTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private PrincipalCache principalCache;
+
+    @InjectMocks
+    private UserDetailsServiceImpl userDetailsService;
+
+    @Test
+    void loadUserByUsername_ShouldLoadProfileWithAdminFlag_WhenNotCached() {
+        // Utilisateur administrateur absent du cache
+        User user = new User("admin@studio.com", "Admin", "Yoga", "hash", true);
+        user.setId(1L);
+        when(principalCache.get("admin@studio.com")).thenReturn(null);
+        when(userRepository.findByEmail("admin@studio.com")).thenReturn(Optional.of(user));
+
+        UserDetailsImpl userDetails = (UserDetailsImpl) userDetailsService.loadUserByUsername("admin@studio.com");
+
+        // Le profil complet, drapeau admin compris, est chargé en une requête puis mis en cache
+        assertEquals(1L, userDetails.getId());
+        assertTrue(userDetails.getAdmin());
+        assertEquals("hash", userDetails.getPassword());
+        verify(principalCache).put(userDetails);
+    }
+
+    @Test
+    void loadUserByUsername_ShouldNotQueryDatabase_WhenCached() {
+        UserDetailsImpl cached = UserDetailsImpl.builder().id(1L).username("admin@studio.com").build();
+        when(principalCache.get("admin@studio.com")).thenReturn(cached);
+
+        // Le principal est servi depuis le cache
+        assertSame(cached, userDetailsService.loadUserByUsername("admin@studio.com"));
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void loadUserByUsername_ShouldThrow_WhenUserDoesNotExist() {
+        when(userRepository.findByEmail("unknown@studio.com")).thenReturn(Optional.empty());
+
+        assertThrows(UsernameNotFoundException.class, () -> userDetailsService.loadUserByUsername("unknown@studio.com"));
+        verify(principalCache, never()).put(any());
+    }
+
+    @Test
+    void updatePassword_ShouldStoreNewHashAndRefreshCache() {
+        UserDetailsImpl current = UserDetailsImpl.builder()
+                .id(1L).username("yoga@studio.com").firstName("Yoga").lastName("Studio").admin(false).password("old-hash")
+                .build();
+
+        UserDetailsImpl updated = (UserDetailsImpl) userDetailsService.updatePassword(current, "new-hash");
+
+        // Le nouveau hash est persisté et remplace l'ancien principal en cache
+        verify(userRepository).updatePassword("yoga@studio.com", "new-hash");
+        verify(principalCache).put(updated);
+        assertEquals("new-hash", updated.getPassword());
+        assertEquals(1L, updated.getId());
+        assertFalse(updated.getAdmin());
+    }
+}
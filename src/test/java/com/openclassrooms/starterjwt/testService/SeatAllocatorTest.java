@@ -0,0 +1,152 @@
+package com.openclassrooms.starterjwt.testService;
+
+import com.openclassrooms.starterjwt.services.SeatAllocator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SeatAllocatorTest {
+
+    private final SeatAllocator seatAllocator = new SeatAllocator();
+
+    @Test
+    void tryReserve_ShouldNeverHandOutMoreSeatsThanRemaining_UnderContention() throws Exception {
+        int threads = 32;
+        int attemptsPerThread = 10_000;
+        AtomicInteger loads = new AtomicInteger();
+        AtomicInteger reserved = new AtomicInteger();
+        AtomicInteger committed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // 32 threads se disputent 25 places en même temps
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    // La base ne voit que les réservations validées
+                    SeatAllocator.Reservation reservation = seatAllocator.tryReserve(1L, id -> {
+                        loads.incrementAndGet();
+                        return 25L - committed.get();
+                    });
+                    if (reservation == SeatAllocator.Reservation.RESERVED) {
+                        reserved.incrementAndGet();
+                        committed.incrementAndGet();
+                        seatAllocator.confirm(1L);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Exactement 25 places attribuées
+        assertEquals(25, reserved.get());
+        assertEquals(25, seatAllocator.getReservedCount());
+
+        // Une fois toutes les réservations validées, les refus se font en mémoire
+        int loadsBefore = loads.get();
+        assertEquals(SeatAllocator.Reservation.FULL, seatAllocator.tryReserve(1L, id -> {
+            loads.incrementAndGet();
+            return 0L;
+        }));
+        assertEquals(loadsBefore, loads.get());
+    }
+
+    @Test
+    void tryReserve_WhenSeatsHeldByPendingBookings_ShouldRecheckDatabaseBeforeRejecting() {
+        assertEquals(SeatAllocator.Reservation.RESERVED, seatAllocator.tryReserve(1L, id -> 1L));
+
+        // La réservation en cours peut encore échouer : la base, qui voit une place libre, a le dernier mot
+        assertEquals(SeatAllocator.Reservation.UNCHECKED, seatAllocator.tryReserve(1L, id -> 1L));
+        assertEquals(SeatAllocator.Reservation.FULL, seatAllocator.tryReserve(1L, id -> 0L));
+
+        // Validée, la place est définitivement prise : refus sans relire la base
+        seatAllocator.confirm(1L);
+        assertEquals(SeatAllocator.Reservation.FULL, seatAllocator.tryReserve(1L, id -> {
+            throw new AssertionError("La base ne doit pas être relue");
+        }));
+    }
+
+    @Test
+    void cancel_ShouldGiveHeldSeatBack() {
+        assertEquals(SeatAllocator.Reservation.RESERVED, seatAllocator.tryReserve(1L, id -> 1L));
+
+        // Réservation annulée (rollback) : la place redevient disponible
+        seatAllocator.cancel(1L);
+        assertEquals(SeatAllocator.Reservation.RESERVED, seatAllocator.tryReserve(1L, id -> 1L));
+    }
+
+    @Test
+    void release_ShouldGiveSeatBack_AndInvalidateShouldReload() {
+        assertEquals(SeatAllocator.Reservation.RESERVED, seatAllocator.tryReserve(1L, id -> 1L));
+        seatAllocator.confirm(1L);
+        assertEquals(SeatAllocator.Reservation.FULL, seatAllocator.tryReserve(1L, id -> 1L));
+
+        // Une annulation libère la place
+        seatAllocator.release(1L);
+        assertEquals(SeatAllocator.Reservation.RESERVED, seatAllocator.tryReserve(1L, id -> 1L));
+
+        // Après invalidation, le nombre de places est relu
+        seatAllocator.invalidate(1L);
+        assertEquals(SeatAllocator.Reservation.RESERVED, seatAllocator.tryReserve(1L, id -> 3L));
+    }
+
+    @Test
+    void tryReserve_ShouldNotTrackUnknownSessions() {
+        // Session inconnue : rien n'est gardé en mémoire, quel que soit le nombre d'identifiants
+        for (long id = 1; id <= 1000; id++) {
+            assertEquals(SeatAllocator.Reservation.UNLIMITED, seatAllocator.tryReserve(id, sessionId -> null));
+        }
+        seatAllocator.release(2L);
+        assertEquals(0, seatAllocator.size());
+    }
+
+    @Test
+    void tryReserve_ShouldRememberUnlimitedSessionsUntilInvalidated() {
+        AtomicInteger loads = new AtomicInteger();
+        Function<Long, Long> unlimited = id -> {
+            loads.incrementAndGet();
+            return SeatAllocator.NO_LIMIT;
+        };
+
+        // Sans capacité : une seule lecture, aucune place comptée
+        for (int i = 0; i < 10; i++) {
+            assertEquals(SeatAllocator.Reservation.UNLIMITED, seatAllocator.tryReserve(1L, unlimited));
+        }
+        seatAllocator.release(1L);
+        assertEquals(1, loads.get());
+        assertEquals(0, seatAllocator.getReservedCount());
+
+        // Une capacité ajoutée depuis est prise en compte après invalidation
+        seatAllocator.invalidate(1L);
+        assertEquals(SeatAllocator.Reservation.RESERVED, seatAllocator.tryReserve(1L, id -> 1L));
+        seatAllocator.confirm(1L);
+        assertEquals(SeatAllocator.Reservation.FULL, seatAllocator.tryReserve(1L, unlimited));
+    }
+
+    @Test
+    void tryReserve_ShouldNotStoreCountLoadedDuringInvalidation() {
+        // La session change pendant la lecture : le compteur lu, peut-être périmé, n'est pas gardé
+        assertEquals(SeatAllocator.Reservation.RESERVED, seatAllocator.tryReserve(1L, id -> {
+            seatAllocator.invalidate(1L);
+            return 1L;
+        }));
+        assertEquals(0, seatAllocator.size());
+    }
+}
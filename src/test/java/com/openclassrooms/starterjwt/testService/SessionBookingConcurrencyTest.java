@@ -0,0 +1,193 @@
+package com.openclassrooms.starterjwt.testService;
+
+import com.openclassrooms.starterjwt.exception.BadRequestException;
+import com.openclassrooms.starterjwt.models.Session;
+import com.openclassrooms.starterjwt.models.Teacher;
+import com.openclassrooms.starterjwt.models.User;
+import com.openclassrooms.starterjwt.repository.SessionRepository;
+import com.openclassrooms.starterjwt.repository.TeacherRepository;
+import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.services.SessionEventBroadcaster;
+import com.openclassrooms.starterjwt.services.SessionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Ruée sur une session à capacité limitée, contre la vraie base de test (transactions réellement validées)
+@SpringBootTest
+@ActiveProfiles("test")
+public class SessionBookingConcurrencyTest {
+
+    private static final int CAPACITY = 10;
+
+    private static final int USERS = 200;
+
+    @Autowired
+    private SessionService sessionService;
+
+    @Autowired
+    private SessionRepository sessionRepository;
+
+    @Autowired
+    private TeacherRepository teacherRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private SessionEventBroadcaster sessionEventBroadcaster;
+
+    private Teacher teacher;
+
+    private Session session;
+
+    private List<User> users;
+
+    @BeforeEach
+    void setUp() {
+        teacher = teacherRepository.save(new Teacher().setFirstName("Rush").setLastName("Hour"));
+        session = sessionRepository.save(new Session()
+                .setName("Cours très demandé")
+                .setDate(new Date())
+                .setDescription("Ouverture des inscriptions")
+                .setTeacher(teacher)
+                .setCapacity(CAPACITY)
+                .setUsers(new ArrayList<>()));
+        users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(new User("rush" + i + "@studio.com", "Rush", "User", "hash", false));
+        }
+        users = userRepository.saveAll(users);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionRepository.deleteById(session.getId());
+        userRepository.deleteAll(users);
+        teacherRepository.delete(teacher);
+    }
+
+    @Test
+    void participate_ShouldNeverOverbook_WhenManyUsersBookAtOnce() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        // Chaque utilisateur tente sa chance deux fois (double clic)
+        List<Future<?>> futures = new ArrayList<>();
+        for (int attempt = 0; attempt < 2; attempt++) {
+            for (User user : users) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        sessionService.participate(session.getId(), user.getId());
+                        booked.incrementAndGet();
+                    } catch (BadRequestException e) {
+                        rejected.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        long elapsedMillis = (System.nanoTime() - begin) / 1_000_000;
+        executor.shutdown();
+
+        // Exactement CAPACITY réservations, aucune en double, toutes les autres refusées
+        List<Long> participantIds = sessionService.findParticipantIds(session);
+        assertEquals(CAPACITY, booked.get());
+        assertEquals(2 * USERS - CAPACITY, rejected.get());
+        assertEquals(CAPACITY, participantIds.size());
+        assertEquals(CAPACITY, participantIds.stream().distinct().count());
+        // Les refus se font en mémoire : la ruée est absorbée rapidement
+        assertTrue(elapsedMillis < 30_000, "Booking rush took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void participate_ShouldFreeSeat_WhenParticipantLeaves() {
+        for (int i = 0; i < CAPACITY; i++) {
+            sessionService.participate(session.getId(), users.get(i).getId());
+        }
+        assertThrows(BadRequestException.class, () -> sessionService.participate(session.getId(), users.get(CAPACITY).getId()));
+
+        // Une désinscription rend une place
+        sessionService.noLongerParticipate(session.getId(), users.get(0).getId());
+        sessionService.participate(session.getId(), users.get(CAPACITY).getId());
+
+        assertEquals(CAPACITY, sessionService.findParticipantIds(session).size());
+    }
+
+    @Test
+    void participate_ShouldPushEventsOnlyForCommittedChanges() throws Exception {
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        int subscribersBefore = sessionEventBroadcaster.getSubscriberCount();
+        SseEmitter emitter = sessionEventBroadcaster.subscribe(new SseEmitter() {
+            private volatile boolean completed;
+
+            @Override
+            public void send(SseEventBuilder builder) {
+                // Comme un vrai émetteur, refuse d'écrire une fois terminé
+                if (completed) {
+                    throw new IllegalStateException("Emitter already completed");
+                }
+                StringBuilder text = new StringBuilder();
+                builder.build().forEach(part -> text.append(part.getData()));
+                // Les battements de cœur (commentaires SSE) sont ignorés
+                if (text.indexOf("data:") >= 0) {
+                    received.add(text.toString());
+                }
+            }
+
+            @Override
+            public synchronized void complete() {
+                completed = true;
+                super.complete();
+            }
+        });
+        String expected = "event:PARTICIPANTS\ndata:{\"type\":\"PARTICIPANTS\",\"sessionId\":" + session.getId() + "}\n\n";
+
+        sessionService.participate(session.getId(), users.get(0).getId());
+        // Doublon refusé : transaction annulée, aucun évènement
+        assertThrows(BadRequestException.class, () -> sessionService.participate(session.getId(), users.get(0).getId()));
+        sessionService.noLongerParticipate(session.getId(), users.get(0).getId());
+
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            events.add(received.poll(5, TimeUnit.SECONDS));
+        }
+        assertEquals(Arrays.asList(expected, expected), events);
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+
+        // L'abonné est retiré du contexte partagé avec les autres tests
+        emitter.complete();
+        sessionEventBroadcaster.heartbeat();
+        for (int i = 0; i < 250 && sessionEventBroadcaster.getSubscriberCount() > subscribersBefore; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(subscribersBefore, sessionEventBroadcaster.getSubscriberCount());
+    }
+}
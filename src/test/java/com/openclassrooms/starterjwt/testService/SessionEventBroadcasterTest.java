@@ -0,0 +1,184 @@
+package com.openclassrooms.starterjwt.testService;
+
+import com.openclassrooms.starterjwt.exception.ServiceUnavailableException;
+import com.openclassrooms.starterjwt.services.SessionChangeEvent;
+import com.openclassrooms.starterjwt.services.SessionEventBroadcaster;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionEventBroadcasterTest {
+
+    // 2 threads d'envoi, 4 évènements en attente au plus par abonné, 3 abonnés au plus
+    private final SessionEventBroadcaster broadcaster = new SessionEventBroadcaster(2, 4, 3, 60000);
+
+    @AfterEach
+    void tearDown() {
+        broadcaster.destroy();
+    }
+
+    @Test
+    void onSessionChange_ShouldPushCompactEventToEverySubscriber() throws Exception {
+        RecordingEmitter first = new RecordingEmitter(1);
+        RecordingEmitter second = new RecordingEmitter(1);
+        broadcaster.subscribe(first);
+        broadcaster.subscribe(second);
+
+        broadcaster.onSessionChange(new SessionChangeEvent(SessionChangeEvent.Type.PARTICIPANTS, 12L));
+
+        // Chaque abonné reçoit le même évènement, nommé d'après son type
+        assertTrue(first.received.await(5, TimeUnit.SECONDS));
+        assertTrue(second.received.await(5, TimeUnit.SECONDS));
+        assertTrue(first.text().contains("event:PARTICIPANTS"), first.text());
+        assertTrue(first.text().contains("data:{\"type\":\"PARTICIPANTS\",\"sessionId\":12}"), first.text());
+        assertEquals(first.text(), second.text());
+    }
+
+    @Test
+    void onSessionChange_ShouldEvictSlowSubscriberWithoutDelayingOthers() throws Exception {
+        CountDownLatch unblock = new CountDownLatch(1);
+        RecordingEmitter slow = new RecordingEmitter(1) {
+            @Override
+            public void send(SseEventBuilder builder) throws IOException {
+                super.send(builder);
+                try {
+                    // Client qui ne lit plus : l'écriture reste bloquée
+                    unblock.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        RecordingEmitter fast = new RecordingEmitter(10);
+        broadcaster.subscribe(slow);
+        broadcaster.subscribe(fast);
+
+        // Le client rapide reçoit chaque évènement pendant que la file du client lent se remplit
+        for (long id = 1; id <= 10; id++) {
+            broadcaster.onSessionChange(new SessionChangeEvent(SessionChangeEvent.Type.UPDATED, id));
+            for (int i = 0; i < 250 && fast.sent.size() < id; i++) {
+                Thread.sleep(20);
+            }
+            assertEquals(id, fast.sent.size());
+        }
+
+        // Le client lent est déconnecté dès que sa file déborde
+        assertEquals(1, broadcaster.getEvictedCount());
+        assertEquals(1, broadcaster.getSubscriberCount());
+        unblock.countDown();
+    }
+
+    @Test
+    void onSessionChange_ShouldDropSubscriberWhoseConnectionFailed() throws Exception {
+        CountDownLatch failed = new CountDownLatch(1);
+        broadcaster.subscribe(new SseEmitter() {
+            @Override
+            public void send(SseEventBuilder builder) throws IOException {
+                failed.countDown();
+                throw new IOException("Broken pipe");
+            }
+        });
+
+        broadcaster.heartbeat();
+
+        assertTrue(failed.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 50 && broadcaster.getSubscriberCount() > 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, broadcaster.getSubscriberCount());
+
+        // La place de l'abonné retiré est rendue
+        for (int i = 0; i < 3; i++) {
+            broadcaster.subscribe(new SseEmitter());
+        }
+        assertEquals(3, broadcaster.getSubscriberCount());
+    }
+
+    @Test
+    void subscribe_ShouldRejectBeyondMaxSubscribers() {
+        broadcaster.subscribe(new SseEmitter());
+        broadcaster.subscribe(new SseEmitter());
+        broadcaster.subscribe(new SseEmitter());
+
+        assertThrows(ServiceUnavailableException.class, () -> broadcaster.subscribe(new SseEmitter()));
+    }
+
+    @Test
+    void subscribe_ShouldNeverExceedMaxSubscribers_UnderContention() throws Exception {
+        int threads = 16;
+        ExecutorService callers = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(callers.submit(() -> {
+                    start.await();
+                    try {
+                        broadcaster.subscribe(new SseEmitter());
+                        accepted.incrementAndGet();
+                    } catch (ServiceUnavailableException e) {
+                        // Limite atteinte
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        // Les abonnements simultanés ne dépassent jamais la limite de 3
+        assertEquals(3, accepted.get());
+        assertEquals(3, broadcaster.getSubscriberCount());
+    }
+
+    @Test
+    void onSessionChange_AfterDestroy_ShouldBeIgnored() {
+        broadcaster.destroy();
+        RecordingEmitter late = new RecordingEmitter(1);
+        broadcaster.subscribe(late);
+
+        // Un battement ou un commit tardif pendant l'arrêt ne doit pas échouer
+        assertDoesNotThrow(() -> broadcaster.heartbeat());
+        assertDoesNotThrow(() -> broadcaster.onSessionChange(new SessionChangeEvent(SessionChangeEvent.Type.UPDATED, 1L)));
+        assertTrue(late.sent.isEmpty());
+    }
+
+    // Émetteur qui garde le texte envoyé au lieu de l'écrire sur une connexion
+    private static class RecordingEmitter extends SseEmitter {
+        final List<String> sent = new CopyOnWriteArrayList<>();
+        final CountDownLatch received;
+
+        RecordingEmitter(int expectedEvents) {
+            this.received = new CountDownLatch(expectedEvents);
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            sent.add(builder.build().stream().map(part -> String.valueOf(part.getData())).collect(Collectors.joining()));
+            received.countDown();
+        }
+
+        String text() {
+            return String.join("", sent);
+        }
+    }
+}
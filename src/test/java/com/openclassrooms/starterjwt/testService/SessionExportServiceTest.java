@@ -0,0 +1,91 @@
+package com.openclassrooms.starterjwt.testService;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.starterjwt.dto.SessionDto;
+import com.openclassrooms.starterjwt.mapper.SessionMapper;
+import com.openclassrooms.starterjwt.models.Session;
+import com.openclassrooms.starterjwt.repository.SessionRepository;
+import com.openclassrooms.starterjwt.services.SessionExportService;
+import com.openclassrooms.starterjwt.services.SessionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class SessionExportServiceTest {
+
+    @Mock
+    private SessionRepository sessionRepository;
+
+    @Mock
+    private SessionService sessionService;
+
+    @Mock
+    private SessionMapper sessionMapper;
+
+    @Mock
+    private EntityManager entityManager;
+
+    private SessionExportService sessionExportService;
+
+    @BeforeEach
+    void setUp() {
+        sessionExportService = new SessionExportService(sessionRepository, sessionService, sessionMapper, new ObjectMapper(), entityManager);
+    }
+
+    @Test
+    void export_ShouldStreamEverySessionAsJsonArray() throws Exception {
+        // 250 sessions lues depuis un stream JPA
+        AtomicBoolean closed = new AtomicBoolean();
+        when(sessionRepository.streamAllByOrderByDateAscIdAsc()).thenReturn(
+                LongStream.rangeClosed(1, 250).mapToObj(id -> new Session().setId(id)).onClose(() -> closed.set(true)));
+        when(sessionService.findParticipantIds(anyList())).thenReturn(Collections.emptyMap());
+        when(sessionMapper.toDto(anyList(), anyMap())).thenAnswer(invocation -> {
+            List<Session> batch = invocation.getArgument(0);
+            return batch.stream().map(session -> {
+                SessionDto dto = new SessionDto();
+                dto.setId(session.getId());
+                return dto;
+            }).collect(Collectors.toList());
+        });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        sessionExportService.export(out);
+
+        // Toutes les sessions sont écrites dans l'ordre, par lots de 100 avec une requête de participants par lot
+        JsonNode body = new ObjectMapper().readTree(out.toByteArray());
+        assertEquals(250, body.size());
+        assertEquals(1L, body.get(0).get("id").asLong());
+        assertEquals(250L, body.get(249).get("id").asLong());
+        verify(sessionService, times(3)).findParticipantIds(anyList());
+        verify(entityManager, times(3)).clear();
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void export_ShouldWriteEmptyArray_WhenNoSession() throws Exception {
+        when(sessionRepository.streamAllByOrderByDateAscIdAsc()).thenReturn(java.util.stream.Stream.empty());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        sessionExportService.export(out);
+
+        assertEquals("[]", out.toString("UTF-8"));
+        verifyNoInteractions(sessionService, sessionMapper, entityManager);
+    }
+}
@@ -0,0 +1,375 @@
+package com.openclassrooms.starterjwt.testService;
+
+import com.openclassrooms.starterjwt.dto.ParticipationResultDto;
+import com.openclassrooms.starterjwt.exception.BadRequestException;
+import com.openclassrooms.starterjwt.exception.NotFoundException;
+import com.openclassrooms.starterjwt.models.Session;
+import com.openclassrooms.starterjwt.models.SessionTombstone;
+import com.openclassrooms.starterjwt.models.Teacher;
+import com.openclassrooms.starterjwt.models.User;
+import com.openclassrooms.starterjwt.repository.Freshness;
+import com.openclassrooms.starterjwt.repository.SessionRepository;
+import com.openclassrooms.starterjwt.repository.SessionTombstoneRepository;
+import com.openclassrooms.starterjwt.repository.TeacherRepository;
+import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.services.SessionCursor;
+import com.openclassrooms.starterjwt.services.SessionService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Compte les requêtes SQL réellement exécutées grâce aux statistiques Hibernate
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@ActiveProfiles("test")
+@Transactional
+public class SessionServiceQueryCountTest {
+
+    @Autowired
+    private SessionService sessionService;
+
+    @Autowired
+    private SessionRepository sessionRepository;
+
+    @Autowired
+    private TeacherRepository teacherRepository;
+
+    @Autowired
+    private SessionTombstoneRepository sessionTombstoneRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    private Long firstSessionId;
+
+    private Long newUserId;
+
+    private Long firstTeacherId;
+
+    @BeforeEach
+    void setUp() {
+        // 20 sessions, réparties entre 2 professeurs, avec 3 participants chacune
+        List<Teacher> teachers = teacherRepository.saveAll(Arrays.asList(
+                new Teacher().setFirstName("Margot").setLastName("Delahaye"),
+                new Teacher().setFirstName("Hélène").setLastName("Thiercelin")));
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            users.add(new User("count" + i + "@studio.com", "Yoga", "User", "hash", false));
+        }
+        users = userRepository.saveAll(users);
+        firstTeacherId = teachers.get(0).getId();
+        newUserId = userRepository.save(new User("newcomer@studio.com", "Yoga", "Newcomer", "hash", false)).getId();
+        for (int i = 0; i < 20; i++) {
+            Session session = sessionRepository.save(new Session()
+                    .setName("Session " + i)
+                    .setDate(new Date(1700000000000L + i * 86400000L))
+                    .setDescription("Description")
+                    .setTeacher(teachers.get(i % 2))
+                    .setUsers(new ArrayList<>(users)));
+            if (firstSessionId == null) {
+                firstSessionId = session.getId();
+            }
+        }
+
+        // On repart d'un contexte de persistance vide pour mesurer les lectures
+        entityManager.flush();
+        entityManager.clear();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void findAll_ShouldLoadSessionsTeachersAndParticipantIdsInTwoQueries() {
+        List<Session> sessions = sessionService.findAll();
+        Map<Long, List<Long>> participantIds = sessionService.findParticipantIds(sessions);
+
+        // Une requête pour les sessions et leurs professeurs, une pour les identifiants des participants
+        assertEquals(20, sessions.size());
+        assertEquals(60, participantIds.values().stream().mapToInt(List::size).sum());
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityStatistics(User.class.getName()).getLoadCount());
+    }
+
+    @Test
+    void getById_ShouldLoadSessionAndParticipantIdsWithoutUsers() {
+        Session session = sessionService.getById(firstSessionId);
+        List<Long> participantIds = sessionService.findParticipantIds(session);
+
+        assertEquals("Margot", session.getTeacher().getFirstName());
+        assertEquals(3, participantIds.size());
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityStatistics(User.class.getName()).getLoadCount());
+    }
+
+    @Test
+    void getWithParticipants_ShouldLoadSessionTeacherAndUsersInOneQuery() {
+        // Chargement complet des utilisateurs, uniquement sur demande explicite
+        Session session = sessionService.getWithParticipants(firstSessionId);
+
+        assertEquals(3, session.getUsers().size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(3, statistics.getEntityStatistics(User.class.getName()).getLoadCount());
+    }
+
+    @Test
+    void participate_ShouldInsertWithSingleStatement() {
+        LocalDateTime updatedAt = updatedAt(firstSessionId);
+        statistics.clear();
+
+        sessionService.participate(firstSessionId, newUserId);
+
+        // Lecture initiale des places restantes, une seule insertion quel que soit le nombre de participants,
+        // puis la mise à jour de updated_at qui invalide l'ETag de la session
+        assertEquals(3, statistics.getPrepareStatementCount());
+        assertTrue(updatedAt(firstSessionId).isAfter(updatedAt));
+        assertEquals(4, sessionService.findParticipantIds(new Session().setId(firstSessionId)).size());
+    }
+
+    @Test
+    void participate_ShouldRejectDuplicateAndUnknownIds() {
+        sessionService.participate(firstSessionId, newUserId);
+
+        assertThrows(BadRequestException.class, () -> sessionService.participate(firstSessionId, newUserId));
+        assertThrows(NotFoundException.class, () -> sessionService.participate(firstSessionId, -1L));
+        assertThrows(NotFoundException.class, () -> sessionService.participate(-1L, newUserId));
+    }
+
+    @Test
+    void noLongerParticipate_ShouldDeleteOnlyTheParticipantRow() {
+        List<Long> before = sessionService.findParticipantIds(new Session().setId(firstSessionId));
+        statistics.clear();
+
+        sessionService.noLongerParticipate(firstSessionId, before.get(0));
+
+        // Une seule suppression ciblée (plus la mise à jour de updated_at), les autres participants restent en place
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(before.subList(1, 3), sessionService.findParticipantIds(new Session().setId(firstSessionId)));
+        assertThrows(BadRequestException.class, () -> sessionService.noLongerParticipate(firstSessionId, before.get(0)));
+        assertThrows(NotFoundException.class, () -> sessionService.noLongerParticipate(-1L, before.get(0)));
+    }
+
+    @Test
+    void participateAll_ShouldReportAStatusPerPair() {
+        Long participantId = sessionService.findParticipantIds(new Session().setId(firstSessionId)).get(0);
+        Session smallSession = sessionRepository.save(new Session()
+                .setName("Petit groupe")
+                .setDate(new Date())
+                .setDescription("Une seule place")
+                .setCapacity(1)
+                .setUsers(new ArrayList<>()));
+
+        List<ParticipationResultDto> results = sessionService.participateAll(new ArrayList<>(Arrays.asList(
+                new ParticipationResultDto(firstSessionId, newUserId, null),
+                new ParticipationResultDto(firstSessionId, participantId, null),
+                new ParticipationResultDto(firstSessionId, -1L, null),
+                new ParticipationResultDto(-1L, newUserId, null),
+                new ParticipationResultDto(smallSession.getId(), newUserId, null),
+                new ParticipationResultDto(smallSession.getId(), participantId, null))));
+
+        assertEquals(Arrays.asList(
+                ParticipationResultDto.Status.ADDED,
+                ParticipationResultDto.Status.ALREADY_PARTICIPATING,
+                ParticipationResultDto.Status.NOT_FOUND,
+                ParticipationResultDto.Status.NOT_FOUND,
+                ParticipationResultDto.Status.ADDED,
+                ParticipationResultDto.Status.SESSION_FULL),
+                results.stream().map(ParticipationResultDto::getStatus).collect(Collectors.toList()));
+        assertEquals(4, sessionService.findParticipantIds(new Session().setId(firstSessionId)).size());
+        assertEquals(Collections.singletonList(newUserId), sessionService.findParticipantIds(smallSession));
+    }
+
+    @Test
+    void noLongerParticipateAll_ShouldRemoveOneUserFromManySessions() {
+        Long participantId = sessionService.findParticipantIds(new Session().setId(firstSessionId)).get(0);
+        List<Session> sessions = sessionService.findAll();
+
+        List<ParticipationResultDto> items = new ArrayList<>();
+        for (Session session : sessions) {
+            items.add(new ParticipationResultDto(session.getId(), participantId, null));
+        }
+        items.add(new ParticipationResultDto(firstSessionId, newUserId, null));
+        items.add(new ParticipationResultDto(-1L, participantId, null));
+        List<ParticipationResultDto> results = sessionService.noLongerParticipateAll(items);
+
+        // Le participant quitte les 20 sessions en un seul lot
+        assertEquals(20, results.stream().filter(r -> r.getStatus() == ParticipationResultDto.Status.REMOVED).count());
+        assertEquals(ParticipationResultDto.Status.NOT_PARTICIPATING, results.get(20).getStatus());
+        assertEquals(ParticipationResultDto.Status.NOT_FOUND, results.get(21).getStatus());
+        assertTrue(sessionService.findParticipantIds(sessions).values().stream().noneMatch(ids -> ids.contains(participantId)));
+    }
+
+    @Test
+    void search_ShouldFilterOnDateRangeAndTeacherInOneQueryPlusCount() {
+        Page<Session> page = sessionService.search(
+                new Date(1700000000000L + 5 * 86400000L),
+                new Date(1700000000000L + 12 * 86400000L),
+                firstTeacherId,
+                null,
+                PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "date").and(Sort.by("id"))));
+
+        // Sessions 6, 8 et 10 : du professeur 0, dans [jour 5, jour 12)
+        assertEquals(Arrays.asList("Session 10", "Session 8", "Session 6"),
+                page.getContent().stream().map(Session::getName).collect(Collectors.toList()));
+        assertEquals(3, page.getTotalElements());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void search_ShouldMatchNamePrefixLiterallyAndPage() {
+        Page<Session> page = sessionService.search(null, null, null, "Session 1",
+                PageRequest.of(0, 5, Sort.by("name").and(Sort.by("id"))));
+
+        // "Session 1" puis "Session 10" à "Session 19"
+        assertEquals(11, page.getTotalElements());
+        assertEquals(5, page.getContent().size());
+        assertEquals("Session 1", page.getContent().get(0).getName());
+        // Les jokers SQL sont échappés
+        assertEquals(0, sessionService.search(null, null, null, "Session_", PageRequest.of(0, 5)).getTotalElements());
+        assertEquals(0, sessionService.search(null, null, null, "%", PageRequest.of(0, 5)).getTotalElements());
+    }
+
+    @Test
+    void search_ShouldUseDateAndTeacherIndexes() {
+        // Le plan d'exécution H2 indique l'index choisi
+        String byDate = String.valueOf(entityManager.createNativeQuery(
+                "explain select id from SESSIONS where date >= '2024-01-01' and date < '2024-01-08'").getSingleResult());
+        String byTeacher = String.valueOf(entityManager.createNativeQuery(
+                "explain select id from SESSIONS where teacher_id = 1 and date >= '2024-01-01'").getSingleResult());
+
+        assertTrue(byDate.contains("idx_sessions_date"), byDate);
+        assertTrue(byTeacher.contains("idx_sessions_teacher_date"), byTeacher);
+    }
+
+    @Test
+    void findParticipantPage_ShouldPageThroughSessionsOfOneUser() {
+        Long participantId = sessionService.findParticipantIds(new Session().setId(firstSessionId)).get(0);
+        sessionService.participate(firstSessionId, newUserId);
+        statistics.clear();
+
+        Slice<Session> first = sessionService.findParticipantPage(participantId, null, 15);
+        Slice<Session> second = sessionService.findParticipantPage(
+                participantId, SessionCursor.after(first.getContent().get(14)), 15);
+
+        // 20 sessions en deux pages, sans doublon ni lecture des utilisateurs
+        assertEquals(15, first.getContent().size());
+        assertTrue(first.hasNext());
+        assertEquals(5, second.getContent().size());
+        assertFalse(second.hasNext());
+        assertEquals("Session 15", second.getContent().get(0).getName());
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityStatistics(User.class.getName()).getLoadCount());
+        assertEquals(Collections.singletonList(firstSessionId),
+                sessionService.findParticipantPage(newUserId, null, 15).getContent().stream()
+                        .map(Session::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void findParticipantPage_ShouldUseUserSideParticipationIndex() {
+        String plan = String.valueOf(entityManager.createNativeQuery(
+                "explain select session_id from PARTICIPATE where user_id = 1").getSingleResult());
+
+        assertTrue(plan.contains("idx_participate_user"), plan);
+    }
+
+    @Test
+    void touch_ShouldKeepTwoChangesWithinTheSameSecondApart() {
+        // Deux changements de participants dans la même seconde, plus récents que toutes les sessions
+        LocalDateTime second = LocalDateTime.now().plusDays(1).withNano(0);
+        sessionRepository.touch(Collections.singleton(firstSessionId), second.plusNanos(100_000));
+        LocalDateTime firstChange = updatedAt(firstSessionId);
+        Freshness firstFreshness = sessionService.getFreshness();
+
+        sessionRepository.touch(Collections.singleton(firstSessionId), second.plusNanos(200_000));
+        LocalDateTime secondChange = updatedAt(firstSessionId);
+        Freshness secondFreshness = sessionService.getFreshness();
+
+        // updated_at garde les microsecondes : la session et la liste changent toutes deux de validateur
+        assertTrue(secondChange.isAfter(firstChange));
+        assertEquals(firstFreshness.getCount(), secondFreshness.getCount());
+        assertTrue(secondFreshness.getLastUpdated().isAfter(firstFreshness.getLastUpdated()));
+    }
+
+    @Test
+    void getFreshness_ShouldChangeWhenASessionIsDeleted() {
+        Freshness before = sessionService.getFreshness();
+
+        sessionService.delete(firstSessionId);
+        entityManager.flush();
+        Freshness after = sessionService.getFreshness();
+
+        // Une seule requête d'agrégat, et le nombre de sessions distingue les deux états
+        assertEquals(20, before.getCount());
+        assertEquals(19, after.getCount());
+        assertNotNull(before.getLastUpdated());
+    }
+
+    @Test
+    void findChangesSince_ShouldReturnOnlyUpdatedAndDeletedSessions() {
+        // Toutes les sessions datent de début 2024, sauf celles modifiées par le test
+        entityManager.createNativeQuery("update SESSIONS set updated_at = '2024-01-01 00:00:00'").executeUpdate();
+        LocalDateTime since = LocalDateTime.of(2024, 6, 1, 0, 0);
+        List<Session> sessions = sessionService.findAll();
+        Long deletedId = sessions.get(1).getId();
+
+        sessionService.participate(firstSessionId, newUserId);
+        sessionService.delete(deletedId);
+        entityManager.flush();
+        statistics.clear();
+
+        List<Session> updated = sessionService.findUpdatedSince(since);
+        List<Long> deleted = sessionService.findDeletedSince(since);
+
+        // Une requête par type de changement, indépendamment de la taille de la table
+        assertEquals(Collections.singletonList(firstSessionId), updated.stream().map(Session::getId).collect(Collectors.toList()));
+        assertEquals(Collections.singletonList(deletedId), deleted);
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void purgeTombstones_ShouldForgetOldDeletions() {
+        sessionTombstoneRepository.save(new SessionTombstone(-1L, LocalDateTime.now().minusDays(60)));
+        sessionTombstoneRepository.save(new SessionTombstone(-2L, LocalDateTime.now().minusDays(1)));
+
+        sessionService.purgeTombstones();
+
+        // Seule la suppression récente reste connue ; une synchronisation plus ancienne doit repartir de zéro
+        assertEquals(Collections.singletonList(-2L), sessionService.findDeletedSince(LocalDateTime.now().minusDays(90)));
+        assertFalse(sessionService.canReportChangesSince(LocalDateTime.now().minusDays(60)));
+        assertTrue(sessionService.canReportChangesSince(LocalDateTime.now().minusDays(1)));
+    }
+
+    // Relu en base : les mises à jour groupées ne passent pas par le contexte de persistance
+    private LocalDateTime updatedAt(Long sessionId) {
+        entityManager.clear();
+        return sessionRepository.findById(sessionId).orElseThrow().getUpdatedAt();
+    }
+}
@@ -1,21 +1,40 @@
 package com.openclassrooms.starterjwt.testService;
 
+import com.openclassrooms.starterjwt.dto.ParticipationResultDto;
 import com.openclassrooms.starterjwt.exception.BadRequestException;
 import com.openclassrooms.starterjwt.exception.NotFoundException;
 import com.openclassrooms.starterjwt.models.Session;
+import com.openclassrooms.starterjwt.models.SessionTombstone;
 import com.openclassrooms.starterjwt.models.User;
+import com.openclassrooms.starterjwt.repository.ParticipationBatchRepository;
 import com.openclassrooms.starterjwt.repository.SessionRepository;
+import com.openclassrooms.starterjwt.repository.SessionTombstoneRepository;
 import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.services.SeatAllocator;
+import com.openclassrooms.starterjwt.services.SessionChangeEvent;
+import com.openclassrooms.starterjwt.services.SessionCursor;
 import com.openclassrooms.starterjwt.services.SessionService;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -30,16 +49,47 @@ public class SessionServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private ParticipationBatchRepository participationBatchRepository;
+
+    @Mock
+    private SessionTombstoneRepository sessionTombstoneRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private SessionService sessionService;
 
+    private SeatAllocator seatAllocator;
+
 
     @BeforeEach
     void setUp() {
         // On redéfinit les mocks manuellement (utile si le test est modifié dynamiquement)
         sessionRepository = mock(SessionRepository.class);
         userRepository = mock(UserRepository.class);
-        sessionService = new SessionService(sessionRepository, userRepository);
+        participationBatchRepository = mock(ParticipationBatchRepository.class);
+        sessionTombstoneRepository = mock(SessionTombstoneRepository.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        seatAllocator = new SeatAllocator();
+        sessionService = new SessionService(sessionRepository, userRepository, seatAllocator,
+                participationBatchRepository, sessionTombstoneRepository, eventPublisher);
+        // Simule la transaction ouverte par @Transactional, pour les actions enregistrées en fin de transaction
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    // Termine la transaction simulée avec le statut donné, puis en ouvre une nouvelle
+    private static void completeTransaction(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+        TransactionSynchronizationManager.initSynchronization();
     }
 
     // Test création d'une session
@@ -63,6 +113,9 @@ public class SessionServiceTest {
         sessionService.delete(id);
 
         verify(sessionRepository).deleteById(id);
+        // Une trace de la suppression est conservée pour la synchronisation différentielle
+        verify(sessionTombstoneRepository).save(argThat((SessionTombstone tombstone) ->
+                tombstone.getSessionId().equals(id) && tombstone.getDeletedAt() != null));
     }
 
 
@@ -79,6 +132,27 @@ public class SessionServiceTest {
         assertEquals(sessions, result);
     }
 
+    // Test première page de sessions
+    @Test
+    void testFindPage_FirstPage() {
+        Slice<Session> slice = new SliceImpl<>(Collections.singletonList(new Session()), PageRequest.of(0, 10), true);
+        when(sessionRepository.findAllByOrderByDateAscIdAsc(PageRequest.of(0, 10))).thenReturn(slice);
+
+        assertSame(slice, sessionService.findPage(null, 10));
+    }
+
+    // Test page suivante à partir d'un curseur (date puis id)
+    @Test
+    void testFindPage_AfterCursor() {
+        Session last = new Session().setId(42L).setDate(new Date(1700000000000L));
+        SessionCursor cursor = SessionCursor.decode(SessionCursor.after(last).encode());
+        Slice<Session> slice = new SliceImpl<>(Collections.emptyList(), PageRequest.of(0, 10), false);
+        when(sessionRepository.findPageAfter(new Date(1700000000000L), 42L, PageRequest.of(0, 10))).thenReturn(slice);
+
+        assertSame(slice, sessionService.findPage(cursor, 10));
+        verify(sessionRepository, never()).findAllByOrderByDateAscIdAsc(any());
+    }
+
     // Test récupération d'une session par ID - cas trouvée
     @Test
     void testGetByIdFound() {
@@ -121,28 +195,44 @@ public class SessionServiceTest {
         assertEquals(savedSession, result);
     }
 
+    // Test identifiants des participants lus depuis la table de jointure
+    @Test
+    void testFindParticipantIds() {
+        Session first = new Session().setId(1L);
+        Session second = new Session().setId(2L);
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{1L, 10L});
+        rows.add(new Object[]{1L, 11L});
+        when(sessionRepository.findParticipantIds(Arrays.asList(1L, 2L))).thenReturn(rows);
+
+        Map<Long, List<Long>> result = sessionService.findParticipantIds(Arrays.asList(first, second));
+
+        // Aucune entité User n'est chargée, seule la session avec participants apparaît
+        assertEquals(Arrays.asList(10L, 11L), result.get(1L));
+        assertFalse(result.containsKey(2L));
+        verifyNoInteractions(userRepository);
+    }
+
     // Test participation d'un utilisateur à une session - cas normal
     @Test
     void testParticipateSuccess() {
         Long sessionId = 1L;
         Long userId = 10L;
 
-        Session session = new Session();
-        session.setUsers(new ArrayList<>());
-        User user = new User();
-        user.setId(userId);
-
-        when(sessionRepository.findById(sessionId)).thenReturn(Optional.of(session));
-        when(userRepository.findById(userId)).thenReturn(Optional.of(user));
-        when(sessionRepository.save(any(Session.class))).thenReturn(session);
+        // Session sans limite de places
+        when(sessionRepository.findRemainingSeats(sessionId)).thenReturn(SeatAllocator.NO_LIMIT);
+        when(sessionRepository.addParticipant(sessionId, userId)).thenReturn(1);
 
         sessionService.participate(sessionId, userId);
 
-        verify(sessionRepository).findById(sessionId);
-        verify(userRepository).findById(userId);
-        // Vérifie que l'utilisateur a bien été ajouté
-        assertTrue(session.getUsers().contains(user));
-        verify(sessionRepository).save(session);
+        // Une seule insertion conditionnelle, sans charger la session ni ses participants
+        verify(sessionRepository).addParticipant(sessionId, userId);
+        verify(sessionRepository, never()).findWithParticipantsById(any());
+        verify(sessionRepository, never()).save(any());
+        verifyNoInteractions(userRepository);
+        // Les abonnés SSE sont prévenus du changement de places
+        verify(eventPublisher).publishEvent(argThat((SessionChangeEvent event) ->
+                event.getType() == SessionChangeEvent.Type.PARTICIPANTS && event.getSessionId().equals(sessionId)));
     }
 
     // Test participation - session ou utilisateur introuvable -> NotFoundException
@@ -151,8 +241,11 @@ public class SessionServiceTest {
         Long sessionId = 1L;
         Long userId = 10L;
 
-        when(sessionRepository.findById(sessionId)).thenReturn(Optional.empty());
-        when(userRepository.findById(userId)).thenReturn(Optional.empty());
+        // Session sans limite de places
+        when(sessionRepository.findRemainingSeats(sessionId)).thenReturn(SeatAllocator.NO_LIMIT);
+        when(sessionRepository.addParticipant(sessionId, userId)).thenReturn(0);
+        when(sessionRepository.existsById(sessionId)).thenReturn(true);
+        when(userRepository.existsById(userId)).thenReturn(false);
 
         assertThrows(NotFoundException.class, () -> sessionService.participate(sessionId, userId));
     }
@@ -163,44 +256,134 @@ public class SessionServiceTest {
         Long sessionId = 1L;
         Long userId = 10L;
 
-        User user = new User();
-        user.setId(userId);
+        // Session sans limite de places
+        when(sessionRepository.findRemainingSeats(sessionId)).thenReturn(SeatAllocator.NO_LIMIT);
+        when(sessionRepository.addParticipant(sessionId, userId)).thenReturn(0);
+        when(sessionRepository.existsById(sessionId)).thenReturn(true);
+        when(userRepository.existsById(userId)).thenReturn(true);
 
-        Session session = new Session();
-        List<User> users = new ArrayList<>();
-        users.add(user);
-        session.setUsers(users);
+        assertThrows(BadRequestException.class, () -> sessionService.participate(sessionId, userId));
+        verifyNoInteractions(eventPublisher);
+    }
+
+    // Test participation - doublon détecté par la clé unique lors d'un accès concurrent -> BadRequestException
+    @Test
+    void testParticipateUniqueKeyViolation() {
+        Long sessionId = 1L;
+        Long userId = 10L;
 
-        when(sessionRepository.findById(sessionId)).thenReturn(Optional.of(session));
-        when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+        // Session sans limite de places
+        when(sessionRepository.findRemainingSeats(sessionId)).thenReturn(SeatAllocator.NO_LIMIT);
+        when(sessionRepository.addParticipant(sessionId, userId))
+                .thenThrow(new DataIntegrityViolationException("Duplicate entry"));
 
         assertThrows(BadRequestException.class, () -> sessionService.participate(sessionId, userId));
     }
 
+    // Test participation - session complète : rejet en mémoire sans requête d'insertion
+    @Test
+    void testParticipateSessionFull() {
+        when(sessionRepository.findRemainingSeats(1L)).thenReturn(0L);
+
+        BadRequestException exception = assertThrows(BadRequestException.class, () -> sessionService.participate(1L, 10L));
+
+        assertEquals("Session is full", exception.getMessage());
+        verify(sessionRepository, never()).addParticipant(any(), any());
+    }
+
+    // Test participation - session à capacité limitée : verrou puis insertion, la place est rendue en cas d'échec
+    @Test
+    void testParticipateLimitedCapacityReleasesSeatOnFailure() {
+        when(sessionRepository.findRemainingSeats(1L)).thenReturn(1L);
+        when(sessionRepository.addParticipant(1L, 10L)).thenReturn(0);
+        when(sessionRepository.existsById(1L)).thenReturn(true);
+        when(userRepository.existsById(10L)).thenReturn(true);
+        when(sessionRepository.addParticipant(1L, 11L)).thenReturn(1);
+
+        // Premier essai refusé (doublon) : la seule place est rendue au rollback de la transaction
+        assertThrows(BadRequestException.class, () -> sessionService.participate(1L, 10L));
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+        sessionService.participate(1L, 11L);
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+        verify(sessionRepository, times(2)).lockById(1L);
+        verify(sessionRepository, times(1)).findRemainingSeats(1L);
+        assertThrows(BadRequestException.class, () -> sessionService.participate(1L, 12L));
+    }
+
+    // Test participation - rollback après une insertion réussie : la place n'est pas perdue
+    @Test
+    void testParticipateRollbackAfterInsertReleasesSeat() {
+        when(sessionRepository.findRemainingSeats(1L)).thenReturn(1L);
+        when(sessionRepository.addParticipant(1L, 10L)).thenReturn(1);
+        when(sessionRepository.touch(any(), any())).thenThrow(new DataIntegrityViolationException("Lock wait timeout"));
+
+        assertThrows(DataIntegrityViolationException.class, () -> sessionService.participate(1L, 10L));
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        // La place retenue est rendue : une nouvelle réservation est acceptée sans relire la base
+        assertEquals(SeatAllocator.Reservation.RESERVED, seatAllocator.tryReserve(1L, id -> 0L));
+    }
+
+    // Test participation - compteur épuisé par une réservation non validée : la base est relue avant de refuser
+    @Test
+    void testParticipateWhileSeatHeldRechecksDatabase() {
+        when(sessionRepository.findRemainingSeats(1L)).thenReturn(1L);
+        when(sessionRepository.addParticipant(1L, 10L)).thenReturn(1);
+        when(sessionRepository.addParticipant(1L, 11L)).thenReturn(1);
+
+        // La première réservation n'est pas encore validée quand la seconde arrive
+        sessionService.participate(1L, 10L);
+        sessionService.participate(1L, 11L);
+
+        // La base annonce encore une place libre : l'insertion conditionnelle décide, sous verrou
+        verify(sessionRepository, times(2)).findRemainingSeats(1L);
+        verify(sessionRepository, times(2)).lockById(1L);
+        verify(sessionRepository).addParticipant(1L, 11L);
+    }
+
+    // Test participation - session sans limite : la base n'est interrogée qu'à la première réservation
+    @Test
+    void testParticipateUnlimitedSessionLoadsCapacityOnce() {
+        when(sessionRepository.findRemainingSeats(1L)).thenReturn(SeatAllocator.NO_LIMIT);
+        when(sessionRepository.addParticipant(eq(1L), anyLong())).thenReturn(1);
+
+        for (long userId = 10; userId < 20; userId++) {
+            sessionService.participate(1L, userId);
+        }
+
+        verify(sessionRepository, times(1)).findRemainingSeats(1L);
+        verify(sessionRepository, never()).lockById(any());
+    }
+
+    // Test participation - session inconnue : rien n'est gardé en mémoire
+    @Test
+    void testParticipateUnknownSessionIsNotTracked() {
+        when(sessionRepository.findRemainingSeats(anyLong())).thenReturn(null);
+        when(sessionRepository.addParticipant(anyLong(), eq(10L))).thenReturn(0);
+        when(sessionRepository.existsById(anyLong())).thenReturn(false);
+
+        for (long id = 1; id <= 100; id++) {
+            long sessionId = id;
+            assertThrows(NotFoundException.class, () -> sessionService.participate(sessionId, 10L));
+        }
+
+        assertEquals(0, seatAllocator.size());
+    }
+
     // Test annulation de participation - cas normal
     @Test
     void testNoLongerParticipateSuccess() {
         Long sessionId = 1L;
         Long userId = 10L;
 
-        User user = new User();
-        user.setId(userId);
-
-        List<User> users = new ArrayList<>();
-        users.add(user);
-
-        Session session = new Session();
-        session.setUsers(users);
-
-        when(sessionRepository.findById(sessionId)).thenReturn(Optional.of(session));
-        when(sessionRepository.save(any(Session.class))).thenReturn(session);
+        when(sessionRepository.removeParticipant(sessionId, userId)).thenReturn(1);
 
         sessionService.noLongerParticipate(sessionId, userId);
 
-        verify(sessionRepository).findById(sessionId);
-        // Vérifie que l'utilisateur a été retiré
-        assertFalse(session.getUsers().stream().anyMatch(u -> u.getId().equals(userId)));
-        verify(sessionRepository).save(session);
+        // Seule la ligne de PARTICIPATE concernée est supprimée
+        verify(sessionRepository).removeParticipant(sessionId, userId);
+        verify(sessionRepository, never()).save(any());
     }
 
     // Test annulation de participation - session non trouvée -> NotFoundException
@@ -209,7 +392,8 @@ public class SessionServiceTest {
         Long sessionId = 1L;
         Long userId = 10L;
 
-        when(sessionRepository.findById(sessionId)).thenReturn(Optional.empty());
+        when(sessionRepository.removeParticipant(sessionId, userId)).thenReturn(0);
+        when(sessionRepository.existsById(sessionId)).thenReturn(false);
 
         assertThrows(NotFoundException.class, () -> sessionService.noLongerParticipate(sessionId, userId));
     }
@@ -221,11 +405,63 @@ public class SessionServiceTest {
         Long sessionId = 1L;
         Long userId = 10L;
 
-        Session session = new Session();
-        session.setUsers(new ArrayList<>()); // pas d'utilisateur
-
-        when(sessionRepository.findById(sessionId)).thenReturn(Optional.of(session));
+        when(sessionRepository.removeParticipant(sessionId, userId)).thenReturn(0);
+        when(sessionRepository.existsById(sessionId)).thenReturn(true);
 
         assertThrows(BadRequestException.class, () -> sessionService.noLongerParticipate(sessionId, userId));
     }
+
+    // Test participation groupée - un seul lot d'insertions, relecture uniquement pour les échecs
+    @Test
+    void testParticipateAll() {
+        List<ParticipationResultDto> items = Arrays.asList(
+                new ParticipationResultDto(1L, 10L, null),
+                new ParticipationResultDto(1L, 11L, null),
+                new ParticipationResultDto(1L, 12L, null),
+                new ParticipationResultDto(1L, 13L, null));
+        when(sessionRepository.lockAllById(any())).thenReturn(Collections.singletonList(1L));
+        when(participationBatchRepository.addAll(Arrays.asList(1L, 1L, 1L, 1L), Arrays.asList(10L, 11L, 12L, 13L)))
+                .thenReturn(new int[]{1, 0, 0, 0});
+        when(userRepository.findExistingIds(any())).thenReturn(Arrays.asList(11L, 12L));
+        when(sessionRepository.findParticipantIds(Collections.singletonList(1L)))
+                .thenReturn(Arrays.asList(new Object[]{1L, 10L}, new Object[]{1L, 11L}));
+
+        List<ParticipationResultDto> results = sessionService.participateAll(items);
+
+        assertEquals(ParticipationResultDto.Status.ADDED, results.get(0).getStatus());
+        assertEquals(ParticipationResultDto.Status.ALREADY_PARTICIPATING, results.get(1).getStatus());
+        assertEquals(ParticipationResultDto.Status.SESSION_FULL, results.get(2).getStatus());
+        assertEquals(ParticipationResultDto.Status.NOT_FOUND, results.get(3).getStatus());
+        verify(participationBatchRepository, times(1)).addAll(any(), any());
+        verify(sessionRepository, never()).save(any());
+    }
+
+    // Test participation groupée - doublon concurrent sur la clé unique -> BadRequestException
+    @Test
+    void testParticipateAllUniqueKeyViolation() {
+        when(sessionRepository.lockAllById(any())).thenReturn(Collections.singletonList(1L));
+        when(participationBatchRepository.addAll(any(), any())).thenThrow(new DataIntegrityViolationException("Duplicate entry"));
+
+        assertThrows(BadRequestException.class, () -> sessionService.participateAll(
+                Collections.singletonList(new ParticipationResultDto(1L, 10L, null))));
+    }
+
+    // Test désinscription groupée - un utilisateur retiré de plusieurs sessions
+    @Test
+    void testNoLongerParticipateAll() {
+        List<ParticipationResultDto> items = Arrays.asList(
+                new ParticipationResultDto(1L, 10L, null),
+                new ParticipationResultDto(2L, 10L, null),
+                new ParticipationResultDto(3L, 10L, null));
+        when(participationBatchRepository.removeAll(Arrays.asList(1L, 2L, 3L), Arrays.asList(10L, 10L, 10L)))
+                .thenReturn(new int[]{1, 0, 0});
+        when(sessionRepository.findExistingIds(any())).thenReturn(Collections.singletonList(2L));
+
+        List<ParticipationResultDto> results = sessionService.noLongerParticipateAll(items);
+
+        assertEquals(ParticipationResultDto.Status.REMOVED, results.get(0).getStatus());
+        assertEquals(ParticipationResultDto.Status.NOT_PARTICIPATING, results.get(1).getStatus());
+        assertEquals(ParticipationResultDto.Status.NOT_FOUND, results.get(2).getStatus());
+        verify(sessionRepository, never()).removeParticipant(any(), any());
+    }
 }
@@ -0,0 +1,115 @@
+package com.openclassrooms.starterjwt.testService;
+
+import com.openclassrooms.starterjwt.dto.SessionDto;
+import com.openclassrooms.starterjwt.dto.SessionView;
+import com.openclassrooms.starterjwt.services.SessionChangeEvent;
+import com.openclassrooms.starterjwt.services.SessionViewCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionViewCacheTest {
+
+    private final SessionViewCache sessionViewCache = new SessionViewCache(100, 60000);
+
+    @Test
+    void get_ShouldLoadOnceThenServeFromCache() {
+        AtomicInteger loads = new AtomicInteger();
+
+        SessionView first = sessionViewCache.get(1L, id -> {
+            loads.incrementAndGet();
+            return view(id, "Yoga");
+        });
+        SessionView second = sessionViewCache.get(1L, id -> {
+            loads.incrementAndGet();
+            return view(id, "Yoga");
+        });
+
+        // Un seul chargement, la même instance est resservie
+        assertEquals(1, loads.get());
+        assertSame(first, second);
+        assertEquals(1, sessionViewCache.getHitCount());
+        assertEquals(1, sessionViewCache.getMissCount());
+        assertEquals(0.5, sessionViewCache.getHitRatio());
+    }
+
+    @Test
+    void onSessionChange_ShouldDropOnlyTheChangedSession() {
+        sessionViewCache.get(1L, id -> view(id, "Yoga"));
+        sessionViewCache.get(2L, id -> view(id, "Pilates"));
+
+        sessionViewCache.onSessionChange(new SessionChangeEvent(SessionChangeEvent.Type.UPDATED, 1L));
+
+        // La session 1 est relue, la session 2 reste en cache
+        assertEquals("Yoga avancé", sessionViewCache.get(1L, id -> view(id, "Yoga avancé")).getName());
+        assertEquals("Pilates", sessionViewCache.get(2L, id -> view(id, "Autre")).getName());
+    }
+
+    @Test
+    void get_WhenSessionChangesDuringLoad_ShouldNotStoreTheStaleView() {
+        // Une modification est validée pendant le chargement de l'ancienne version
+        SessionView stale = sessionViewCache.get(1L, id -> {
+            sessionViewCache.onSessionChange(new SessionChangeEvent(SessionChangeEvent.Type.UPDATED, 1L));
+            return view(id, "Ancienne version");
+        });
+
+        assertEquals("Ancienne version", stale.getName());
+        assertEquals(0, sessionViewCache.size());
+        assertEquals("Nouvelle version", sessionViewCache.get(1L, id -> view(id, "Nouvelle version")).getName());
+    }
+
+    @Test
+    void logMetrics_ShouldKeepTotalsSinceStartup() {
+        sessionViewCache.get(1L, id -> view(id, "Yoga"));
+        sessionViewCache.get(1L, id -> view(id, "Autre"));
+
+        // Le résumé ne porte que sur l'intervalle, les compteurs cumulés restent intacts
+        sessionViewCache.logMetrics();
+        sessionViewCache.logMetrics();
+        assertEquals(1, sessionViewCache.getHitCount());
+        assertEquals(1, sessionViewCache.getMissCount());
+    }
+
+    @Test
+    void get_WhenLoaderReturnsNull_ShouldNotCache() {
+        assertNull(sessionViewCache.get(1L, id -> null));
+        assertEquals(0, sessionViewCache.size());
+    }
+
+    @Test
+    void sessionView_ShouldNotChangeWhenTheSourceDtoOrReturnedValuesChange() {
+        List<Long> users = new ArrayList<>(Arrays.asList(10L, 20L));
+        Date date = new Date(1700000000000L);
+        SessionDto dto = new SessionDto();
+        dto.setId(1L);
+        dto.setName("Yoga");
+        dto.setDate(date);
+        dto.setUsers(users);
+        SessionView view = SessionView.of(dto);
+
+        // Les modifications de la source ne se propagent pas à la vue en cache
+        users.add(30L);
+        date.setTime(0L);
+        dto.setName("Modifié");
+        view.getDate().setTime(0L);
+
+        assertEquals("Yoga", view.getName());
+        assertEquals(Arrays.asList(10L, 20L), view.getUsers());
+        assertEquals(1700000000000L, view.getDate().getTime());
+        assertThrows(UnsupportedOperationException.class, () -> view.getUsers().add(40L));
+    }
+
+    private static SessionView view(Long id, String name) {
+        SessionDto dto = new SessionDto();
+        dto.setId(id);
+        dto.setName(name);
+        dto.setDate(new Date());
+        return SessionView.of(dto);
+    }
+}
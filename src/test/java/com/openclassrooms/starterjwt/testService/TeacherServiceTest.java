@@ -2,6 +2,7 @@ package com.openclassrooms.starterjwt.testService;
 
 
 import com.openclassrooms.starterjwt.models.Teacher;
+import com.openclassrooms.starterjwt.repository.Freshness;
 import com.openclassrooms.starterjwt.repository.TeacherRepository;
 import com.openclassrooms.starterjwt.services.TeacherService;
 import org.junit.jupiter.api.Test;
@@ -10,7 +11,9 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -56,7 +59,7 @@ public class TeacherServiceTest {
         teacher.setId(teacherId);
         teacher.setLastName("Durand");
 
-        when(teacherRepository.findById(teacherId)).thenReturn(Optional.of(teacher));
+        when(teacherRepository.findAll()).thenReturn(Arrays.asList(teacher));
 
         // Act
         Teacher result = teacherService.findById(teacherId);
@@ -64,7 +67,7 @@ public class TeacherServiceTest {
         // Assert
         assertNotNull(result);
         assertEquals("Durand", result.getLastName());
-        verify(teacherRepository, times(1)).findById(teacherId);
+        verify(teacherRepository, never()).findById(teacherId); // Lu depuis le catalogue en mémoire
     }
 
     @Test
@@ -72,13 +75,110 @@ public class TeacherServiceTest {
         // Arrange
         Long teacherId = 99L;
 
-        when(teacherRepository.findById(teacherId)).thenReturn(Optional.empty());
+        when(teacherRepository.findAll()).thenReturn(Collections.emptyList());
 
         // Act
         Teacher result = teacherService.findById(teacherId);
 
         // Assert
         assertNull(result); // Aucun prof trouvé
-        verify(teacherRepository, times(1)).findById(teacherId);
+        verify(teacherRepository, never()).findById(teacherId);
+    }
+
+    @Test
+    void testReads_AreServedFromCatalogLoadedOnce() {
+        Teacher teacher = new Teacher().setId(1L).setLastName("Durand").setUpdatedAt(LocalDateTime.of(2024, 5, 6, 10, 0));
+        when(teacherRepository.findAll()).thenReturn(Arrays.asList(teacher));
+        teacherService.reload();
+
+        // Plusieurs lectures, aucune nouvelle requête
+        teacherService.findAll();
+        teacherService.findById(1L);
+        teacherService.getUpdatedAt(1L);
+        Freshness freshness = teacherService.getFreshness();
+
+        assertEquals(1, freshness.getCount());
+        assertEquals(LocalDateTime.of(2024, 5, 6, 10, 0), freshness.getLastUpdated());
+        verify(teacherRepository, times(1)).findAll();
+        verifyNoMoreInteractions(teacherRepository);
+    }
+
+    @Test
+    void testReads_ReturnCopiesThatCannotAlterTheCatalog() {
+        Teacher teacher = new Teacher().setId(1L).setLastName("Durand");
+        when(teacherRepository.findAll()).thenReturn(Arrays.asList(teacher));
+        teacherService.reload();
+
+        // Ni l'entité chargée, ni les copies rendues ne modifient le catalogue
+        teacher.setLastName("Chargée");
+        teacherService.findById(1L).setLastName("Modifié");
+        teacherService.findAll().get(0).setLastName("Modifié aussi");
+
+        assertEquals("Durand", teacherService.findById(1L).getLastName());
+        assertNotSame(teacherService.findById(1L), teacherService.findById(1L));
+    }
+
+    @Test
+    void testRefresh_WhenTableUnchanged_KeepsCatalog() {
+        Teacher teacher = new Teacher().setId(1L).setLastName("Durand").setUpdatedAt(LocalDateTime.of(2024, 5, 6, 10, 0));
+        when(teacherRepository.findAll()).thenReturn(Arrays.asList(teacher));
+        when(teacherRepository.findFreshness()).thenReturn(freshness(1, LocalDateTime.of(2024, 5, 6, 10, 0)));
+        teacherService.reload();
+
+        teacherService.refresh();
+
+        // Seul le nombre et la dernière mise à jour sont relus
+        verify(teacherRepository, times(1)).findAll();
+        verify(teacherRepository, times(1)).findFreshness();
+    }
+
+    @Test
+    void testRefresh_WhenRowEditedOutOfBand_SwapsCatalog() {
+        Teacher before = new Teacher().setId(1L).setLastName("Durand").setUpdatedAt(LocalDateTime.of(2024, 5, 6, 10, 0));
+        Teacher after = new Teacher().setId(1L).setLastName("Durant").setUpdatedAt(LocalDateTime.of(2024, 5, 7, 9, 0));
+        when(teacherRepository.findAll()).thenReturn(Arrays.asList(before), Arrays.asList(after));
+        when(teacherRepository.findFreshness()).thenReturn(freshness(1, LocalDateTime.of(2024, 5, 7, 9, 0)));
+        teacherService.reload();
+        List<Teacher> previous = teacherService.findAll();
+
+        teacherService.refresh();
+
+        // Le nouveau catalogue remplace l'ancien, qui reste intact pour ses lecteurs
+        assertEquals("Durant", teacherService.findById(1L).getLastName());
+        assertEquals("Durand", previous.get(0).getLastName());
+        assertEquals(LocalDateTime.of(2024, 5, 7, 9, 0), teacherService.getFreshness().getLastUpdated());
+    }
+
+    @Test
+    void testFindOrLoad_WhenTeacherInsertedSinceLastRefresh_AddsItToCatalog() {
+        Teacher known = new Teacher().setId(1L).setLastName("Durand");
+        Teacher inserted = new Teacher().setId(2L).setLastName("Nouveau");
+        when(teacherRepository.findAll()).thenReturn(Arrays.asList(known));
+        when(teacherRepository.findById(2L)).thenReturn(Optional.of(inserted));
+        when(teacherRepository.findById(3L)).thenReturn(Optional.empty());
+        teacherService.reload();
+
+        // Absent du catalogue : une seule lecture en base, puis servi depuis la mémoire
+        assertEquals("Nouveau", teacherService.findOrLoad(2L).getLastName());
+        assertEquals("Nouveau", teacherService.findOrLoad(2L).getLastName());
+        assertEquals(2, teacherService.findAll().size());
+        verify(teacherRepository, times(1)).findById(2L);
+
+        // Inconnu aussi en base
+        assertNull(teacherService.findOrLoad(3L));
+    }
+
+    private static Freshness freshness(long count, LocalDateTime lastUpdated) {
+        return new Freshness() {
+            @Override
+            public long getCount() {
+                return count;
+            }
+
+            @Override
+            public LocalDateTime getLastUpdated() {
+                return lastUpdated;
+            }
+        };
     }
 }
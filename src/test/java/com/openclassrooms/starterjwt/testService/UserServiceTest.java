@@ -2,6 +2,8 @@ package com.openclassrooms.starterjwt.testService;
 
 import com.openclassrooms.starterjwt.models.User;
 import com.openclassrooms.starterjwt.repository.UserRepository;
+import com.openclassrooms.starterjwt.security.jwt.TokenRevocationStore;
+import com.openclassrooms.starterjwt.security.services.PrincipalCache;
 import com.openclassrooms.starterjwt.services.UserService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,6 +11,8 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -20,6 +24,12 @@ public class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private PrincipalCache principalCache;
+
+    @Mock
+    private TokenRevocationStore revocationStore;
+
     @InjectMocks
     private UserService userService;
 
@@ -68,5 +78,23 @@ public class UserServiceTest {
 
         // Assert Vérifie que deleteById a bien été appelé une fois avec le bon ID
         verify(userRepository, times(1)).deleteById(userId); // Vérifie que deleteById a été appelé une fois
+        verify(principalCache, times(1)).evictUserId(userId); // L'utilisateur supprimé est retiré du cache
+        verify(revocationStore, times(1)).revokeUser(userId); // Ses tokens déjà émis sont révoqués
+    }
+
+    @Test
+    void testFindAllById_ResolvesUsersInOneQuery() {
+        // Arrange Deux utilisateurs demandés en une fois
+        User first = new User("one@studio.com", "One", "Yoga", "hash", false);
+        User second = new User("two@studio.com", "Two", "Yoga", "hash", false);
+        List<Long> ids = Arrays.asList(1L, 2L);
+        when(userRepository.findAllById(ids)).thenReturn(Arrays.asList(first, second));
+
+        // Act
+        List<User> result = userService.findAllById(ids);
+
+        // Assert Une seule requête pour tous les identifiants
+        assertEquals(Arrays.asList(first, second), result);
+        verify(userRepository, times(1)).findAllById(ids);
     }
 }